@@ -0,0 +1,210 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import simpledb.file.Block;
+
+/**
+ * ARC, the Adaptive Replacement Cache (Megiddo and Modha). Resident buffers
+ * are split between T1, which holds blocks referenced once since they were
+ * read, and T2, which holds blocks referenced at least twice. The ghost lists
+ * B1 and B2 remember the addresses of blocks recently replaced from T1 and T2.
+ * A miss on a block remembered in B1 grows the target size p of T1, and a miss
+ * on a block remembered in B2 shrinks it. Buffers are replaced from T1 while
+ * T1 is larger than p, and from T2 otherwise.
+ *
+ * A repeated reference moves a buffer to the most recently used end of T2
+ * when the buffer is unpinned. Since the pool chooses the victim before it
+ * knows which block will be read, the tie-break of the original algorithm on
+ * a B2 hit is not applied.
+ *
+ * @author Team F
+ */
+public class ARCPolicy implements ReplacementPolicy {
+	private static final int T1 = 1, T2 = 2;
+
+	private int capacity;
+	private int p = 0;
+	private LinkedHashSet<Buffer> t1 = new LinkedHashSet<Buffer>();
+	private LinkedHashSet<Buffer> t2 = new LinkedHashSet<Buffer>();
+	private LinkedHashSet<Block> b1 = new LinkedHashSet<Block>();
+	private LinkedHashSet<Block> b2 = new LinkedHashSet<Block>();
+
+	/**
+	 * Creates an ARC policy for a pool of the specified size.
+	 *
+	 * @param numbuffs
+	 *            the number of buffers in the pool
+	 */
+	public ARCPolicy(int numbuffs) {
+		this.capacity = numbuffs;
+	}
+
+	/**
+	 * Adapts p if the block is remembered in a ghost list and puts the buffer
+	 * in T2; otherwise puts the buffer in T1.
+	 */
+	public void admit(Buffer buff) {
+		ListState ls = new ListState();
+		buff.setPolicyState(ls);
+		Block blk = buff.block();
+		if (b1.contains(blk)) {
+			p = Math.min(capacity, p + Math.max(b2.size() / b1.size(), 1));
+			b1.remove(blk);
+			ls.list = T2;
+			t2.add(buff);
+		} else if (b2.contains(blk)) {
+			p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+			b2.remove(blk);
+			ls.list = T2;
+			t2.add(buff);
+		} else {
+			ls.list = T1;
+			t1.add(buff);
+			while (t1.size() + b1.size() > capacity && !b1.isEmpty())
+				removeOldest(b1);
+			while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity && !b2.isEmpty())
+				removeOldest(b2);
+		}
+	}
+
+	/**
+	 * Notes that the buffer was referenced again.
+	 */
+	public void pin(Buffer buff) {
+		ListState ls = (ListState) buff.policyState();
+		synchronized (ls) {
+			if (ls.fresh)
+				ls.fresh = false;
+			else
+				ls.referenced = true;
+		}
+	}
+
+	/**
+	 * Moves a buffer that was referenced again to the most recently used end
+	 * of T2.
+	 */
+	public void unpin(Buffer buff) {
+		ListState ls = (ListState) buff.policyState();
+		if (ls.referenced) {
+			if (ls.list == T1)
+				t1.remove(buff);
+			else
+				t2.remove(buff);
+			ls.list = T2;
+			t2.add(buff);
+		}
+		ls.referenced = false;
+	}
+
+	/**
+	 * Replaces the least recently used unpinned buffer of T1 if T1 is larger
+	 * than p, and of T2 otherwise, and remembers its block in the matching
+	 * ghost list.
+	 */
+	public Buffer evict() {
+		Buffer victim = null;
+		if (t1.size() > 0 && t1.size() > p)
+			victim = firstUnpinned(t1);
+		if (victim == null)
+			victim = firstUnpinned(t2);
+		if (victim == null)
+			victim = firstUnpinned(t1);
+		if (victim == null)
+			return null;
+
+		ListState ls = (ListState) victim.policyState();
+		if (ls.list == T1)
+			b1.add(victim.block());
+		else
+			b2.add(victim.block());
+		victim.setPolicyState(null);
+		return victim;
+	}
+
+	/**
+	 * Drops the buffer from its list, without remembering its block in a
+	 * ghost list.
+	 */
+	public void remove(Buffer buff) {
+		ListState ls = (ListState) buff.policyState();
+		if (ls != null) {
+			if (ls.list == T1)
+				t1.remove(buff);
+			else
+				t2.remove(buff);
+		}
+		buff.setPolicyState(null);
+	}
+
+	/**
+	 * Returns the unpinned buffers of T1 then of T2 if T1 is larger than p,
+	 * and of T2 then of T1 otherwise.
+	 */
+	public List<Buffer> victimOrder() {
+		List<Buffer> order = new ArrayList<Buffer>();
+		if (t1.size() > 0 && t1.size() > p) {
+			addUnpinned(t1, order);
+			addUnpinned(t2, order);
+		} else {
+			addUnpinned(t2, order);
+			addUnpinned(t1, order);
+		}
+		return order;
+	}
+
+	/**
+	 * Changes the capacity c of the cache, keeping p between 0 and c and the
+	 * ghost lists within the bounds of the algorithm.
+	 */
+	public void resize(int numbuffs) {
+		capacity = numbuffs;
+		p = Math.min(p, capacity);
+		while (b1.size() > 0 && t1.size() + b1.size() > capacity)
+			removeOldest(b1);
+		while (b2.size() > 0 && t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity)
+			removeOldest(b2);
+	}
+
+	private void addUnpinned(LinkedHashSet<Buffer> list, List<Buffer> order) {
+		for (Buffer buff : list)
+			if (!buff.isPinned())
+				order.add(buff);
+	}
+
+	private Buffer firstUnpinned(LinkedHashSet<Buffer> list) {
+		Iterator<Buffer> iter = list.iterator();
+		while (iter.hasNext()) {
+			Buffer buff = iter.next();
+			if (buff.claim()) {
+				iter.remove();
+				return buff;
+			}
+		}
+		return null;
+	}
+
+	private void removeOldest(LinkedHashSet<Block> ghosts) {
+		Iterator<Block> iter = ghosts.iterator();
+		iter.next();
+		iter.remove();
+	}
+
+	/**
+	 * The list a buffer belongs to, and whether it was referenced again since
+	 * it was last unpinned.
+	 */
+	private static class ListState {
+		int list;
+		boolean fresh = true;
+		boolean referenced = false;
+
+		public String toString() {
+			return (list == T2) ? "[T2]" : "[T1]";
+		}
+	}
+}
@@ -1,8 +1,22 @@
 package simpledb.buffer;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import simpledb.file.*;
+import simpledb.server.SimpleDB;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
@@ -12,18 +26,77 @@ import simpledb.file.*;
  */
 class BasicBufferMgr {
 	/**
-	 * Added HashMap to keep track of buffers in the pool instead of an array
-	 * because retrieval is faster Created a counter variable to track the 'pin
-	 * time' of a block Created a poolLength to store the maximum limit on the
-	 * buffer pool size
+	 * Added a ConcurrentHashMap to keep track of buffers in the pool instead of
+	 * an array because retrieval is faster, and because a block that is
+	 * already in the pool can then be pinned without taking any lock. The
+	 * replacement policy decides which unpinned buffer is replaced. Created a
+	 * poolLength to store the maximum limit on the buffer pool size
+	 * 
+	 * Misses are serialized per partition of the block address space by the
+	 * missLocks, so that two threads never read the same block into two
+	 * buffers. Choosing a victim and the bookkeeping of the replacement policy
+	 * synchronize on the BasicBufferMgr itself; no disk I/O happens while that
+	 * monitor is held.
+	 * 
+	 * The buffers that each active transaction has modified are kept in
+	 * dirtyBuffers, so that a commit flushes them without looking at the
+	 * rest of the pool, and the files of the blocks it modified in
+	 * dirtyFiles, so that a commit forces only those files.
+	 * 
+	 * A victim that is still dirty is written by the transaction that needs
+	 * the buffer; those writes are counted in syncWrites. The optional
+	 * background writer tries to keep that from happening.
+	 * A victim whose old page cannot be written goes back to the pool with
+	 * its old block, so that a failed write loses neither the frame nor the
+	 * page. A thread that finds a claimed buffer under the miss lock waits
+	 * for the claim to end instead of spinning.
+	 * 
+	 * The pool can be resized while it is used. The pages of the buffers
+	 * dropped when the pool shrinks are kept in freePages, and reused before
+	 * new frames are allocated when it grows again.
+	 * 
+	 * Runs of adjacent blocks are read and written with one vectored I/O of
+	 * at most MAX_RUN blocks. A run that is read holds the miss locks of all
+	 * its blocks, taken in partition order, while its buffers are chosen.
+	 * 
+	 * A block is read after its miss lock is released: its buffer is put in
+	 * the pool first, pinned and in I/O, and the pinners that find it wait
+	 * for the read (see {@link Buffer#awaitRead()}). Reads for a pinner are
+	 * done by the pinning thread; reads ahead are queued to the I/O threads
+	 * of the file manager, and hold a pin of their own until they are over.
 	 * 
 	 * @author Team F
 	 */
-	private HashMap<Block, Buffer> bufferPoolMap;
-	private int numAvailable;
-	private int poolLength;
-	private int unclaimedBuffCount;
-	public static double counter;
+	private static final int NUM_PARTITIONS = 16;
+	private static final int MAX_RUN = 32;
+
+	/**
+	 * Orders the entries of the pool by the file and the number of their
+	 * block, so that the background writer writes each file sequentially.
+	 */
+	private static final Comparator<Map.Entry<Block, Buffer>> BLOCK_ORDER = new Comparator<Map.Entry<Block, Buffer>>() {
+		public int compare(Map.Entry<Block, Buffer> e1, Map.Entry<Block, Buffer> e2) {
+			return Long.compare(e1.getKey().address(), e2.getKey().address());
+		}
+	};
+
+	private ConcurrentHashMap<Block, Buffer> bufferPoolMap;
+	private ConcurrentHashMap<Integer, Set<Buffer>> dirtyBuffers = new ConcurrentHashMap<Integer, Set<Buffer>>();
+	private ConcurrentHashMap<Integer, Set<String>> dirtyFiles = new ConcurrentHashMap<Integer, Set<String>>();
+	private Object[] missLocks;
+	private ReplacementPolicy policy;
+	private AtomicInteger numAvailable;
+	private volatile int poolLength;
+	private volatile int numFrames;
+	private int retiring = 0;
+	private PageArena arena;
+	private int nextFrame = 0;
+	private ArrayDeque<Page> freePages = new ArrayDeque<Page>();
+	private AtomicLong syncWrites = new AtomicLong(0);
+	private AtomicLong backgroundWrites = new AtomicLong(0);
+	private volatile BufferWriter writer = null;
+	private volatile ReadAhead readAhead = null;
+	private volatile HotSet hotSet = null;
 
 	/**
 	 * Creates a buffer manager having the specified number of buffer slots. This
@@ -36,30 +109,177 @@ class BasicBufferMgr {
 	 * 
 	 * @param numbuffs
 	 *            the number of buffer slots to allocate
+	 * @param policy
+	 *            the replacement policy of the pool
 	 * 
-	 *            Removed array initialization and replaced it with HashMap.
-	 *            Assigning poolLength
+	 *            Removed array initialization and replaced it with a
+	 *            ConcurrentHashMap. Assigning poolLength
 	 * 
 	 * @author Team F
 	 */
-	BasicBufferMgr(int numbuffs) {
-		bufferPoolMap = new HashMap<Block, Buffer>();
-		numAvailable = numbuffs;
+	BasicBufferMgr(int numbuffs, ReplacementPolicy policy) {
+		bufferPoolMap = new ConcurrentHashMap<Block, Buffer>();
+		missLocks = new Object[NUM_PARTITIONS];
+		for (int i = 0; i < NUM_PARTITIONS; i++)
+			missLocks[i] = new Object();
+		this.policy = policy;
+		numAvailable = new AtomicInteger(numbuffs);
 		poolLength = numbuffs;
-		unclaimedBuffCount = numbuffs;
+		numFrames = 0;
+		arena = new PageArena(numbuffs);
 	}
 
 	/**
 	 * Flushes the dirty buffers modified by the specified transaction.
 	 * 
+	 * Only the buffers recorded for the transaction in dirtyBuffers are
+	 * looked at. The log is flushed once up to the last LSN of those buffers,
+	 * and then the pages are written in block order, each run of adjacent
+	 * blocks with one write. Buffers that were written or replaced since the
+	 * transaction modified them are skipped.
+	 * 
 	 * @param txnum
 	 *            the transaction's id number
+	 * @return the names of the files of the blocks that the transaction
+	 *         modified, whoever wrote them, which the caller forces
+	 * @author Team F
+	 */
+	Set<String> flushAll(int txnum) {
+		Set<String> files = dirtyFiles.remove(txnum);
+		if (files == null)
+			files = Collections.emptySet();
+		Set<Buffer> buffs = dirtyBuffers.remove(txnum);
+		if (buffs == null)
+			return files;
+		List<Map.Entry<Block, Buffer>> pages = new ArrayList<Map.Entry<Block, Buffer>>();
+		int maxLsn = -1;
+		for (Buffer buff : buffs) {
+			Block blk = buff.block();
+			if (blk != null && buff.isModifiedBy(txnum)) {
+				pages.add(new AbstractMap.SimpleEntry<Block, Buffer>(blk, buff));
+				maxLsn = Math.max(maxLsn, buff.logSequenceNumber());
+			}
+		}
+		Collections.sort(pages, BLOCK_ORDER);
+		if (maxLsn >= 0)
+			SimpleDB.logMgr().flush(maxLsn);
+		List<Map.Entry<Block, Buffer>> run = new ArrayList<Map.Entry<Block, Buffer>>();
+		for (Map.Entry<Block, Buffer> e : pages) {
+			if (e.getValue().isModifiedBy(txnum)) {
+				if (!run.isEmpty() && !extendsRun(run, e.getKey()))
+					flushRun(run);
+				run.add(e);
+			}
+		}
+		flushRun(run);
+		return files;
+	}
+
+	/**
+	 * Writes the dirty buffers of the specified file, each run of adjacent
+	 * blocks with one write, for example the blocks of a sorted run once it
+	 * is complete.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @author Team F
+	 */
+	void flushFile(String filename) {
+		int fileid = FileIds.id(filename);
+		List<Map.Entry<Block, Buffer>> pages = new ArrayList<Map.Entry<Block, Buffer>>();
+		for (Map.Entry<Block, Buffer> e : bufferPoolMap.entrySet())
+			if (e.getKey().fileId() == fileid && e.getValue().isDirty())
+				pages.add(e);
+		Collections.sort(pages, BLOCK_ORDER);
+		List<Map.Entry<Block, Buffer>> run = new ArrayList<Map.Entry<Block, Buffer>>();
+		for (Map.Entry<Block, Buffer> e : pages) {
+			if (!run.isEmpty() && !extendsRun(run, e.getKey()))
+				flushRun(run);
+			run.add(e);
+		}
+		flushRun(run);
+	}
+
+	/**
+	 * Forgets the blocks of the specified file, which is about to be deleted,
+	 * such as the file of a temporary table that was dropped. The queued reads
+	 * of the file are dropped, and its unpinned buffers leave the pool map
+	 * without being written, so that they are the next victims to be found
+	 * clean. Buffers that are claimed by another thread are skipped; a late
+	 * write of one of their pages is ignored by the file manager.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @author Team F
+	 */
+	void dropFile(String filename) {
+		ReadAhead ra = readAhead;
+		if (ra != null)
+			ra.forget(filename);
+		int fileid = FileIds.id(filename);
+		for (Map.Entry<Block, Buffer> e : bufferPoolMap.entrySet()) {
+			if (e.getKey().fileId() != fileid)
+				continue;
+			Buffer buff = e.getValue();
+			if (!buff.claim())
+				continue;
+			try {
+				if (e.getKey().equals(buff.block())) {
+					bufferPoolMap.remove(e.getKey(), buff);
+					buff.discard();
+				}
+			} finally {
+				buff.unclaim();
+				synchronized (this) {
+					if (buff.pinCount() == 0)
+						policy.unpin(buff);
+				}
+			}
+		}
+	}
+
+	private boolean extendsRun(List<Map.Entry<Block, Buffer>> run, Block blk) {
+		Block last = run.get(run.size() - 1).getKey();
+		return run.size() < MAX_RUN && blk.fileId() == last.fileId() && blk.number() == last.number() + 1;
+	}
+
+	/**
+	 * Writes a run of buffers and empties it.
+	 */
+	private void flushRun(List<Map.Entry<Block, Buffer>> run) {
+		if (run.size() == 1)
+			run.get(0).getValue().flush();
+		else if (run.size() > 1) {
+			Buffer[] buffs = new Buffer[run.size()];
+			for (int i = 0; i < buffs.length; i++)
+				buffs[i] = run.get(i).getValue();
+			Buffer.flushRun(run.get(0).getKey(), buffs);
+		}
+		run.clear();
+	}
+
+	/**
+	 * Records that the specified transaction modified the buffer, and the
+	 * file of its block. The file is recorded now, since the page may be
+	 * written to it by another thread before the transaction commits.
+	 * 
+	 * @author Team F
 	 */
-	synchronized void flushAll(int txnum) {
-		for (Block b : bufferPoolMap.keySet()) {
-			Buffer buff = bufferPoolMap.get(b);
-			if (buff.isModifiedBy(txnum))
-				buff.flush();
+	void noteModified(Buffer buff, int txnum) {
+		Set<Buffer> buffs = dirtyBuffers.get(txnum);
+		if (buffs == null) {
+			dirtyBuffers.putIfAbsent(txnum, Collections.newSetFromMap(new ConcurrentHashMap<Buffer, Boolean>()));
+			buffs = dirtyBuffers.get(txnum);
+		}
+		buffs.add(buff);
+		Block blk = buff.block();
+		if (blk != null) {
+			Set<String> files = dirtyFiles.get(txnum);
+			if (files == null) {
+				dirtyFiles.putIfAbsent(txnum, ConcurrentHashMap.<String> newKeySet());
+				files = dirtyFiles.get(txnum);
+			}
+			files.add(blk.fileName());
 		}
 	}
 
@@ -73,27 +293,94 @@ class BasicBufferMgr {
 	 * @return the pinned buffer
 	 * 
 	 *         Check if the block is there in the buffer pool by calling
-	 *         findExistingBuffer. Choose a victim/new buffer if block is not
-	 *         present in pool and remove it from pool Assign the block to the
-	 *         buffer above Increment the counter to keep track of when the block
-	 *         was pinned Put the buffer in the buffer pool (HashMap)
+	 *         findExistingBuffer, and if so pin it without locking. Otherwise
+	 *         take the miss lock of the block's partition and look again,
+	 *         since another thread may have read the block in the meantime.
+	 *         Choose a victim/new buffer if block is still not present in pool
+	 *         Assign the block to the buffer above, remove the old block from
+	 *         the pool and admit the buffer to the replacement policy Put the
+	 *         buffer in the buffer pool (ConcurrentHashMap) Report the pin to
+	 *         the replacement policy
 	 * 
 	 * @author Team F
 	 */
-	synchronized Buffer pin(Block blk) {
-		Buffer buff = findExistingBuffer(blk);
-		if (buff == null) {
-			buff = chooseUnpinnedBuffer();
+	Buffer pin(Block blk) {
+		return pin(blk, null);
+	}
+
+	/**
+	 * Pins a buffer to the specified block like {@link #pin(Block)}, except
+	 * that if the block has to be read, the buffer is taken from the
+	 * specified ring when possible. Scans that use a ring are not read
+	 * ahead, since the blocks read ahead would not go into the ring.
+	 * 
+	 * @param blk
+	 *            a reference to a disk block
+	 * @param ring
+	 *            the ring of the scan, or null to use the replacement policy
+	 * @return the pinned buffer
+	 * @author Team F
+	 */
+	Buffer pin(Block blk, BufferRing ring) {
+		Buffer buff = pinResident(blk, ring);
+		if (buff != null)
+			return buff;
+		if (ring == null)
+			noteAccess(blk);
+
+		synchronized (missLock(blk)) {
+			buff = findExistingBuffer(blk);
+			while (buff != null) {
+				if (pinExisting(buff, blk))
+					return buff;
+				// the buffer is claimed, for instance because it is being
+				// assigned to another block; wait until it is published or
+				// given back, or its old mapping is removed
+				buff.awaitClaim(bufferPoolMap, blk);
+				buff = findExistingBuffer(blk);
+			}
+			buff = chooseUnpinnedBuffer(ring);
 			if (buff == null) {
 				return null;
 			}
-			remapBuffer(buff.block(), blk, buff);
-			buff.assignToBlock(blk);
+			Block oldBlk = buff.block();
+			noteVictim(buff);
+			try {
+				buff.beginRead(blk);
+			} catch (RuntimeException e) {
+				// the old page could not be written; the victim still holds it
+				giveBack(buff);
+				throw e;
+			}
+			publish(oldBlk, buff);
+			if (ring != null)
+				ring.add(buff);
+		}
+		RuntimeException error = readBuffers(new Buffer[] { buff }, false);
+		if (error != null) {
+			unpin(buff);
+			throw error;
 		}
-		if (!buff.isPinned())
-			numAvailable--;
-		counter++;
-		buff.pin();
+		return buff;
+	}
+
+	/**
+	 * Pins the buffer that holds the specified block without taking any lock,
+	 * if the block is already in the pool. Such a pin needs no new buffer.
+	 * 
+	 * @param blk
+	 *            a reference to a disk block
+	 * @param ring
+	 *            the ring of the scan, or null to use the replacement policy
+	 * @return the pinned buffer, or null if the block has to be read
+	 * @author Team F
+	 */
+	Buffer pinResident(Block blk, BufferRing ring) {
+		Buffer buff = findExistingBuffer(blk);
+		if (buff == null || !pinExisting(buff, blk))
+			return null;
+		if (buff.takePrefetched() && ring == null)
+			noteAccess(blk);
 		return buff;
 	}
 
@@ -107,38 +394,203 @@ class BasicBufferMgr {
 	 *            a pageformatter object, used to format the new block
 	 * @return the pinned buffer
 	 * 
-	 *         Choose a victim/new buffer if block is not present in pool and remove
-	 *         it from pool Assign the block to the buffer above Increment the
-	 *         counter to keep track of when the block was pinned Put the buffer in
-	 *         the buffer pool (HashMap)
+	 *         Choose a victim/new buffer Assign the new block to the buffer
+	 *         above, remove the old block from the pool and admit the buffer
+	 *         to the replacement policy Put the buffer in the buffer pool
+	 *         (ConcurrentHashMap) Report the pin to the replacement policy
 	 * 
 	 * @author Team F
 	 */
-	synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-		Buffer buff = chooseUnpinnedBuffer();
+	Buffer pinNew(String filename, PageFormatter fmtr) {
+		return pinNew(filename, fmtr, null);
+	}
+
+	/**
+	 * Allocates a new block like {@link #pinNew(String, PageFormatter)},
+	 * except that the buffer is taken from the specified ring when possible.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @param fmtr
+	 *            a pageformatter object, used to format the new block
+	 * @param ring
+	 *            the ring of the scan, or null to use the replacement policy
+	 * @return the pinned buffer
+	 * @author Team F
+	 */
+	Buffer pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
+		Buffer buff = chooseUnpinnedBuffer(ring);
 		if(buff == null) {
 			return null;
 		}
 		Block oldBlk = buff.block(); 
-		buff.assignToNew(filename, fmtr);
-		Block newBlk = buff.block();
-		numAvailable--;
-		remapBuffer(oldBlk, newBlk, buff);
-		counter++;
-		buff.pin();
+		noteVictim(buff);
+		try {
+			buff.assignToNew(filename, fmtr);
+		} catch (RuntimeException e) {
+			// either the old page could not be written, and the victim still
+			// holds it, or the new block could not be appended, and the
+			// victim is left without a block and dropped
+			if (oldBlk != null && buff.block() == null)
+				removeMapping(oldBlk, buff);
+			giveBack(buff);
+			throw e;
+		}
+		Block blk = buff.block();
+		// drop the old mapping before taking a miss lock, since a thread that
+		// holds miss locks may be waiting for it to go
+		if (oldBlk != null)
+			removeMapping(oldBlk, buff);
+		synchronized (missLock(blk)) {
+			// once appended, the block can be read by another thread before
+			// the buffer is published; that copy is then used instead
+			Buffer existing = findExistingBuffer(blk);
+			while (existing != null) {
+				if (pinExisting(existing, blk)) {
+					release(oldBlk, buff);
+					return existing;
+				}
+				existing.awaitClaim(bufferPoolMap, blk);
+				existing = findExistingBuffer(blk);
+			}
+			publish(oldBlk, buff);
+		}
+		if (ring != null)
+			ring.add(buff);
 		return buff;
 	}
 
 	/**
-	 * Unpins the specified buffer.
+	 * Moves a buffer that the caller keeps pinned to a new block of the
+	 * specified file, so that the caller never waits for a buffer of the
+	 * pool. No miss lock is taken: the new block is put in the pool map
+	 * directly, so the file must be one that nobody else reads through the
+	 * pool while it grows, such as the log.
+	 * 
+	 * @param buff
+	 *            the buffer, pinned by the caller
+	 * @param filename
+	 *            the name of the file
+	 * @param fmtr
+	 *            a pageformatter object, used to format the new block
+	 * @author Team F
+	 */
+	void moveToNew(Buffer buff, String filename, PageFormatter fmtr) {
+		Block oldBlk = buff.block();
+		buff.moveToNew(filename, fmtr);
+		if (oldBlk != null)
+			bufferPoolMap.remove(oldBlk, buff);
+		bufferPoolMap.put(buff.block(), buff);
+	}
+
+	/**
+	 * Unpins the specified buffer. A buffer whose pin count drops to zero
+	 * becomes a replacement candidate of the replacement policy, unless it was
+	 * pinned or claimed again in the meantime.
 	 * 
 	 * @param buff
 	 *            the buffer to be unpinned
 	 */
-	synchronized void unpin(Buffer buff) {
-		buff.unpin();
-		if (!buff.isPinned())
-			numAvailable++;
+	void unpin(Buffer buff) {
+		if (buff.unpin() == 0) {
+			numAvailable.incrementAndGet();
+			synchronized (this) {
+				if (buff.pinCount() == 0)
+					policy.unpin(buff);
+			}
+			if (numFrames > poolLength)
+				retireExcess();
+		}
+	}
+
+	/**
+	 * Changes the number of buffers of the pool. When the pool grows, the new
+	 * buffers are created as they are needed. When it shrinks, unpinned
+	 * buffers are written if they are dirty and dropped, in the order chosen
+	 * by the replacement policy; the buffers that are pinned are dropped when
+	 * they are unpinned.
+	 * 
+	 * @param numbuffs
+	 *            the new number of buffers
+	 * @author Team F
+	 */
+	void resize(int numbuffs) {
+		synchronized (this) {
+			int oldSlots = freeSlots();
+			int newSlots = Math.max(0, numbuffs - (numFrames - retiring));
+			// the pages of the retiring buffers are about to be free
+			int missing = newSlots - freePages.size() - retiring - (arena.numFrames() - nextFrame);
+			if (missing > 0) {
+				while (nextFrame < arena.numFrames())
+					freePages.push(arena.page(nextFrame++));
+				arena = new PageArena(missing);
+				nextFrame = 0;
+			}
+			poolLength = numbuffs;
+			policy.resize(numbuffs);
+			numAvailable.addAndGet(newSlots - oldSlots);
+		}
+		retireExcess();
+	}
+
+	/**
+	 * Drops unpinned buffers until the pool has no more buffers than
+	 * poolLength. Each victim stays claimed while it is written, and forever
+	 * after, so that stale references to it can neither pin nor replace it.
+	 * If a victim cannot be written, it goes back to the pool.
+	 * 
+	 * @author Team F
+	 */
+	private void retireExcess() {
+		while (true) {
+			Buffer buff;
+			synchronized (this) {
+				if (numFrames - retiring <= poolLength)
+					return;
+				buff = policy.evict();
+				if (buff == null)
+					return;
+				policy.remove(buff);
+				numAvailable.decrementAndGet();
+				retiring++;
+			}
+			Block blk = buff.block();
+			try {
+				if (blk != null)
+					buff.flush();
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					int slots = freeSlots();
+					retiring--;
+					policy.admit(buff);
+					buff.unclaim();
+					// the buffer is back, and may take a slot that a resize
+					// counted as free
+					numAvailable.addAndGet(1 + freeSlots() - slots);
+					policy.unpin(buff);
+				}
+				return;
+			}
+			if (blk != null)
+				removeMapping(blk, buff);
+			synchronized (this) {
+				retiring--;
+				numFrames--;
+				freePages.push(buff.page());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of buffers that the pool may still create, which
+	 * count as available. The buffers that are being retired are counted as
+	 * gone already, so that a resize while they are written does not lose
+	 * their slots. The caller holds the lock of the pool.
+	 * 
+	 * @author Team F
+	 */
+	private int freeSlots() {
+		return Math.max(0, poolLength - (numFrames - retiring));
 	}
 
 	/**
@@ -147,12 +599,12 @@ class BasicBufferMgr {
 	 * @return the number of available buffers
 	 */
 	int available() {
-		return numAvailable;
+		return numAvailable.get();
 	}
 
 	/**
-	 * Find and return the Buffer from the HashMap instead of searching from the
-	 * buffer array If not found return null
+	 * Find and return the Buffer from the ConcurrentHashMap instead of
+	 * searching from the buffer array If not found return null
 	 * 
 	 * @author Team F
 	 */
@@ -161,102 +613,750 @@ class BasicBufferMgr {
 	}
 
 	/**
-	 * LRU(2) Replacement Policy implementation. Each buffer has two fields to keep
-	 * track of when it was accessed last and second(k=2) last.
-	 * 
-	 * If there is space left in the buffer pool, just create a new buffer and
-	 * return
-	 * 
-	 * Else search for a victim from the available unpinned buffers with the
-	 * following logic.
+	 * Pins a buffer found in the pool without taking any lock, and waits for
+	 * its block to be read if it is being read. Fails if the buffer is
+	 * claimed, if it was assigned to another block after it was looked up,
+	 * or if its read failed.
 	 * 
-	 * -------------------------------------------------------------------------------------
-	 * 
-	 * If the replacement candidate and unpinned buffer from the pool have been pinned only once 
-	 * --> Make the buffer which was pinned first, (least recently used) as the candidate
-	 * 
-	 * If the replacement candidate and unpinned buffer from the pool have been pinned twice 
-	 * --> Make the buffer which was pinned first, (least recently used) as the candidate
+	 * @author Team F
+	 */
+	private boolean pinExisting(Buffer buff, Block blk) {
+		int pins = buff.tryPin();
+		if (pins == Buffer.CLAIMED)
+			return false;
+		if (pins == 0)
+			numAvailable.decrementAndGet();
+		buff.awaitRead();
+		if (!blk.equals(buff.block())) {
+			unpin(buff);
+			return false;
+		}
+		policy.pin(buff);
+		return true;
+	}
+
+	/**
+	 * Makes a claimed buffer that was just assigned to its new block visible
+	 * to other threads, pinned once.
 	 * 
-	 * If either of the replacement candidate or unpinned buffer from the pool have been pinned only once 
-	 * --> Make the buffer which was pinned only once (infinite back distance) as the candidate
+	 * @author Team F
+	 */
+	private void publish(Block oldBlk, Buffer buff) {
+		if (oldBlk != null)
+			removeMapping(oldBlk, buff);
+		synchronized (this) {
+			policy.admit(buff);
+		}
+		buff.pinClaimed();
+		policy.pin(buff);
+		bufferPoolMap.put(buff.block(), buff);
+	}
+
+	/**
+	 * Removes the mapping of a claimed buffer to its old block, and wakes up
+	 * the threads that found the buffer there and wait for the claim to end.
+	 */
+	private void removeMapping(Block oldBlk, Buffer buff) {
+		bufferPoolMap.remove(oldBlk, buff);
+		buff.wakeClaimWaiters();
+	}
+
+	/**
+	 * Makes a claimed buffer whose block is about to be read ahead visible to
+	 * other threads. The buffer is pinned once for the read, which is not a
+	 * reference for the replacement policy, and marked as prefetched.
 	 * 
-	 * ----> return the candidate after comparing with all the unpinned buffers
+	 * @author Team F
+	 */
+	private void publishAhead(Block oldBlk, Buffer buff) {
+		if (oldBlk != null)
+			removeMapping(oldBlk, buff);
+		synchronized (this) {
+			policy.admit(buff);
+		}
+		buff.pinClaimed();
+		buff.setPrefetched();
+		bufferPoolMap.put(buff.block(), buff);
+	}
+
+	/**
+	 * Reads the specified block into a free buffer of the pool, leaving the
+	 * buffer unpinned, unless the block is already in the pool. Unlike
+	 * {@link #pin(Block) pin}, it never uses one of the last half of the
+	 * unpinned buffers, so that read-ahead cannot take the buffers that
+	 * transactions are waiting for. The read is queued to the I/O threads.
 	 * 
-	 * -------------------------------------------------------------------------------------
+	 * @param blk
+	 *            a reference to a disk block
+	 * @return false if there was no free buffer
+	 * @author Team F
+	 */
+	boolean prefetch(Block blk) {
+		if (bufferPoolMap.containsKey(blk))
+			return true;
+		return prefetchRange(blk.fileName(), blk.number(), blk.number()) == 1;
+	}
+
+	/**
+	 * Pins the blocks startbnum to endbnum of the specified file. The blocks
+	 * that are not in the pool are read with one vectored read for each run
+	 * of adjacent missing blocks. Either all the blocks are pinned, or none
+	 * is and null is returned, so that a caller that waits for buffers does
+	 * not hold some of them meanwhile.
 	 * 
-	 * If there are no unpinned buffers, raise an BufferAbortException
+	 * @param filename
+	 *            the name of the file
+	 * @param startbnum
+	 *            the first block to pin
+	 * @param endbnum
+	 *            the last block to pin
+	 * @return the pinned buffers in block order, or null if there were not
+	 *         enough available buffers
+	 * @author Team F
+	 */
+	Buffer[] pinRange(String filename, int startbnum, int endbnum) {
+		int n = endbnum - startbnum + 1;
+		Buffer[] buffs = new Buffer[n];
+		for (int i = 0; i < n; i++) {
+			Block blk = new Block(filename, startbnum + i);
+			Buffer buff = findExistingBuffer(blk);
+			if (buff != null && pinExisting(buff, blk))
+				buffs[i] = buff;
+		}
+		for (int i = 0; i < n;) {
+			if (buffs[i] != null) {
+				i++;
+				continue;
+			}
+			int end = Math.min(n, i + MAX_RUN);
+			boolean read = false;
+			try {
+				read = readRun(filename, startbnum, buffs, i, end, true) == end;
+			} finally {
+				if (!read)
+					for (Buffer buff : buffs)
+						if (buff != null)
+							unpin(buff);
+			}
+			if (!read)
+				return null;
+			i = end;
+		}
+		return buffs;
+	}
+
+	/**
+	 * Reads the blocks startbnum to endbnum of the specified file that are
+	 * not in the pool into free buffers, leaving them unpinned, with one
+	 * vectored read for each run of adjacent missing blocks, queued to the
+	 * I/O threads. Like
+	 * {@link #prefetch(Block)}, it stops when only the last half of the
+	 * unpinned buffers is left.
 	 * 
+	 * @return the number of blocks of the range that are in the pool
 	 * @author Team F
 	 */
-	private Buffer chooseUnpinnedBuffer() {
-		// If no unpinned buffers are available and all the buffers are pinned, then throw exception
-		if (numAvailable == 0)
-			throw new BufferAbortException();
-		
-		Buffer buf = getUnclaimedBuffs();
-		if(buf!=null) return buf;
-		
+	int prefetchRange(String filename, int startbnum, int endbnum) {
+		int n = endbnum - startbnum + 1;
+		Buffer[] buffs = new Buffer[n];
+		for (int i = 0; i < n; i += MAX_RUN) {
+			int end = Math.min(n, i + MAX_RUN);
+			int done = readRun(filename, startbnum, buffs, i, end, false);
+			if (done < end)
+				return done;
+		}
+		return n;
+	}
 
-		Buffer lruBuff = null;
-		for (Buffer b : bufferPoolMap.values()) {
-			if (!b.isPinned()) {
-				if (lruBuff == null) {
-					lruBuff = b;
-				} else {
-					// If both the current block and replacement candidate was pinned twice or more
-					if (b.getSecondLastPin() != 0 && lruBuff.getSecondLastPin() != 0) {
-						if (b.getlastPin() < lruBuff.getlastPin()) {
-							lruBuff = b;
+	/**
+	 * Reads the blocks of positions from to end - 1 of a range of blocks that
+	 * starts at startbnum, except those already pinned in buffs. The blocks
+	 * that are already in the pool are pinned if pin is set, and skipped
+	 * otherwise. The others are read into victims,
+	 * which are pinned if pin is set and left unpinned otherwise. As in
+	 * {@link #pin(Block)}, the victims are chosen while the miss locks are
+	 * held, so that a claimed buffer always belongs to a thread that holds
+	 * the locks it needs, and the blocks are read once the locks are
+	 * released. If pin is set, the blocks are read by the calling thread, and
+	 * an error of a read is thrown once all the reads are over; otherwise
+	 * they are queued to the I/O threads.
+	 * 
+	 * @return end, or the position of the first block that could not be read
+	 *         for lack of a buffer; if pin is set, nothing of the run is then
+	 *         left pinned
+	 */
+	private int readRun(String filename, int startbnum, Buffer[] buffs, int from, int end, boolean pin) {
+		Block[] blocks = new Block[end - from];
+		boolean[] parts = new boolean[NUM_PARTITIONS];
+		for (int i = from; i < end; i++) {
+			blocks[i - from] = new Block(filename, startbnum + i);
+			parts[partition(blocks[i - from])] = true;
+		}
+		List<Buffer[]> reads = new ArrayList<Buffer[]>();
+		int done = readRun(parts, 0, blocks, new Buffer[end - from], buffs, from, end, pin, reads);
+		RuntimeException error = null;
+		for (Buffer[] run : reads) {
+			RuntimeException e = readBuffers(run, !pin);
+			if (error == null)
+				error = e;
+		}
+		if (error != null)
+			throw error;
+		return done;
+	}
+
+	private int readRun(boolean[] parts, int p, Block[] blocks, Buffer[] victims, Buffer[] buffs, int from, int end,
+			boolean pin, List<Buffer[]> reads) {
+		while (p < NUM_PARTITIONS && !parts[p])
+			p++;
+		if (p < NUM_PARTITIONS) {
+			synchronized (missLocks[p]) {
+				return readRun(parts, p + 1, blocks, victims, buffs, from, end, pin, reads);
+			}
+		}
+		// the miss locks of all the blocks of the run are held; the blocks
+		// in the pool are pinned first, so that no victim holds one of them
+		boolean[] missing = new boolean[end - from];
+		for (int i = from; i < end; i++) {
+			if (buffs[i] != null)
+				continue;
+			Block blk = blocks[i - from];
+			Buffer buff = findExistingBuffer(blk);
+			while (pin && buff != null && !pinExisting(buff, blk)) {
+				buff.awaitClaim(bufferPoolMap, blk);
+				buff = findExistingBuffer(blk);
+			}
+			if (buff == null)
+				missing[i - from] = true;
+			else if (pin)
+				buffs[i] = buff;
+		}
+		for (int i = from; i < end; i++) {
+			if (!missing[i - from])
+				continue;
+			victims[i - from] = pin ? chooseUnpinnedBuffer(null) : chooseFreeBuffer();
+			if (victims[i - from] == null) {
+				if (pin) {
+					for (int k = from; k < end; k++)
+						if (buffs[k] != null) {
+							unpin(buffs[k]);
+							buffs[k] = null;
 						}
-					}
-					// If both the current block and replacement candidate was pinned only once
-					else if (b.getSecondLastPin() == 0 && lruBuff.getSecondLastPin() == 0) {
-						if (b.getlastPin() < lruBuff.getlastPin()) {
-							lruBuff = b;
+					releaseVictims(victims);
+					return i;
+				}
+				releaseVictims(Arrays.copyOfRange(victims, i - from, victims.length));
+				end = i;
+				break;
+			}
+			noteVictim(victims[i - from]);
+		}
+		// the old pages of the victims are written before any of them is
+		// published, so that a failed write leaves no buffer in I/O
+		for (int i = from; i < end; i++) {
+			if (victims[i - from] == null)
+				continue;
+			try {
+				victims[i - from].flush();
+			} catch (RuntimeException e) {
+				if (pin)
+					for (int k = from; k < end; k++)
+						if (buffs[k] != null) {
+							unpin(buffs[k]);
+							buffs[k] = null;
 						}
-					}
-					// If either of the current block or replacement candidate was pinned only once
-					else if (b.getSecondLastPin() == 0 || lruBuff.getSecondLastPin() == 0) {
-						lruBuff = b.getSecondLastPin() != 0 ? lruBuff : b;
-					}
+				releaseVictims(victims);
+				throw e;
+			}
+		}
+		for (int i = from; i < end;) {
+			if (victims[i - from] == null) {
+				i++;
+				continue;
+			}
+			int j = i;
+			while (j < end && victims[j - from] != null)
+				j++;
+			for (int k = i; k < j; k++) {
+				Buffer buff = victims[k - from];
+				Block oldBlk = buff.block();
+				buff.beginRead(blocks[k - from]);
+				if (pin) {
+					publish(oldBlk, buff);
+					buffs[k] = buff;
+				} else
+					publishAhead(oldBlk, buff);
+			}
+			reads.add(Arrays.copyOfRange(victims, i - from, j - from));
+			i = j;
+		}
+		return end;
+	}
+
+	/**
+	 * Reads a run of adjacent blocks into the buffers that were put in I/O
+	 * for them. A read ahead is queued to the I/O threads, and its pins are
+	 * dropped when it is over. Otherwise the run is read by the calling
+	 * thread, which keeps its pins.
+	 * 
+	 * @return the error of the read, which only a read by the calling thread
+	 *         returns, or null
+	 */
+	private RuntimeException readBuffers(final Buffer[] run, final boolean ahead) {
+		Block first = run[0].block();
+		Page[] pages = new Page[run.length];
+		for (int i = 0; i < run.length; i++)
+			pages[i] = run[i].page();
+		if (ahead) {
+			Page.readAsync(first, pages, new IOCompletion() {
+				public void completed(RuntimeException error) {
+					// an error is reported when the block is read again
+					endReads(run, error == null, true);
 				}
+			});
+			return null;
+		}
+		RuntimeException error = null;
+		try {
+			Page.read(first, pages);
+		} catch (RuntimeException e) {
+			error = e;
+		}
+		endReads(run, error == null, false);
+		return error;
+	}
+
+	/**
+	 * Ends the I/O of the buffers of a run. The buffers of a failed read leave
+	 * the pool map first, so that their pinners look for the blocks again.
+	 */
+	private void endReads(Buffer[] run, boolean ok, boolean ahead) {
+		for (Buffer buff : run) {
+			if (!ok)
+				bufferPoolMap.remove(buff.block(), buff);
+			buff.endRead(ok);
+			if (ahead)
+				unpin(buff);
+		}
+	}
+
+	/**
+	 * Gives claimed victims that were not used back to the pool.
+	 */
+	private void releaseVictims(Buffer[] victims) {
+		for (int i = 0; i < victims.length; i++)
+			if (victims[i] != null) {
+				giveBack(victims[i]);
+				victims[i] = null;
 			}
+	}
+
+	/**
+	 * Gives a claimed victim that was not used back to the pool. A victim
+	 * replaced by the policy still holds its old block and becomes unpinned
+	 * again; a buffer created for the occasion is dropped, and its page kept
+	 * for the next one.
+	 */
+	private void giveBack(Buffer victim) {
+		if (victim.block() != null) {
+			release(null, victim);
+			return;
+		}
+		synchronized (this) {
+			numFrames--;
+			freePages.push(victim.page());
+			numAvailable.incrementAndGet();
 		}
+	}
 
-		// Reset the pin times
-		lruBuff.setLastPin(0);
-		lruBuff.setSecondLastPin(0);
+	/**
+	 * Makes a claimed buffer that was just assigned to a new block unpinned
+	 * and available for replacement, without pinning it.
+	 * 
+	 * @author Team F
+	 */
+	private void release(Block oldBlk, Buffer buff) {
+		if (oldBlk != null)
+			removeMapping(oldBlk, buff);
+		synchronized (this) {
+			policy.admit(buff);
+			buff.unclaim();
+			numAvailable.incrementAndGet();
+			policy.unpin(buff);
+		}
+	}
 
-		// Return the buffer
-		return lruBuff;
-	
+	/**
+	 * Counts the victims that the transaction has to write itself, and wakes
+	 * up the background writer when that happens.
+	 * 
+	 * @author Team F
+	 */
+	private void noteVictim(Buffer buff) {
+		if (buff.isDirty()) {
+			syncWrites.incrementAndGet();
+			BufferWriter w = writer;
+			if (w != null)
+				w.wakeUp();
+		}
 	}
-	
+
+	private Object missLock(Block blk) {
+		return missLocks[partition(blk)];
+	}
+
+	private int partition(Block blk) {
+		return (blk.hashCode() & 0x7fffffff) % NUM_PARTITIONS;
+	}
+
 	/**
-	 * Get the number of unclaimed and unpinned buffers in the buffer pool
-	 * @return
+	 * If there is space left in the buffer pool, just create a new buffer and
+	 * return
+	 * 
+	 * Else ask the replacement policy for a victim among the unpinned
+	 * buffers. The LRU(2) policy that the pool used originally is
+	 * {@link LRUKPolicy} with K = 2. The victim is returned claimed, so no
+	 * other thread can pin it until it has been assigned to its new block.
+	 * 
+	 * If there are no unpinned buffers, return null, so that
+	 * {@link BufferMgr} can queue the request until a buffer is unpinned
+	 * 
+	 * A scan with a ring reuses the next buffer of its ring instead, if
+	 * that buffer can be claimed.
+	 * 
+	 * @author Team F
 	 */
-	private int getNumUnclaimedBuffs() {
-		unclaimedBuffCount = poolLength - bufferPoolMap.size();
-		return unclaimedBuffCount;
+	private synchronized Buffer chooseUnpinnedBuffer(BufferRing ring) {
+		// If no unpinned buffers are available and all the buffers are pinned, then return null
+		if (numAvailable.get() <= 0)
+			return null;
+		
+		if (ring != null) {
+			Buffer buf = ring.candidate();
+			if (buf != null && buf.claim()) {
+				policy.remove(buf);
+				numAvailable.decrementAndGet();
+				return buf;
+			}
+		}
+		Buffer buf = getUnclaimedBuffs();
+		if (buf == null)
+			buf = policy.evict();
+		if (buf == null)
+			return null;
+		numAvailable.decrementAndGet();
+		return buf;
 	}
 	
+	/**
+	 * Like chooseUnpinnedBuffer, but returns null instead of replacing one of
+	 * the last half of the unpinned buffers.
+	 * 
+	 * @author Team F
+	 */
+	private synchronized Buffer chooseFreeBuffer() {
+		Buffer buf = getUnclaimedBuffs();
+		if (buf == null && numAvailable.get() > poolLength / 2)
+			buf = policy.evict();
+		if (buf != null)
+			numAvailable.decrementAndGet();
+		return buf;
+	}
+
+	/**
+	 * Create a new buffer if fewer than poolLength buffers have been created
+	 * so far. The new buffer starts out claimed. Its page is the page of a
+	 * dropped buffer or the next frame of the arena; a frame is never given
+	 * out twice, so buffers created after the JUnit helpers forget some
+	 * buffers get pages of their own.
+	 * @return the new buffer, or null if the pool is full
+	 */
 	private Buffer getUnclaimedBuffs() {
-		if(getNumUnclaimedBuffs()>0) return new Buffer();
+		if (numFrames < poolLength) {
+			numFrames++;
+			Page page = freePages.poll();
+			if (page == null)
+				page = (nextFrame < arena.numFrames()) ? arena.page(nextFrame++) : new Page();
+			return new Buffer(this, page);
+		}
 		return null;
 	}
+
 	/**
-	 * Remap the buffer from old block to new
-	 * @param oldBlk
-	 * @param newBlk
-	 * @param buff
+	 * Returns the maximum number of buffers in the pool.
+	 * 
+	 * @author Team F
 	 */
-	private void remapBuffer(Block oldBlk, Block newBlk, Buffer buff) {
-		bufferPoolMap.remove(oldBlk);
-		if(newBlk!=null) {
-			bufferPoolMap.put(newBlk, buff);
+	int poolLength() {
+		return poolLength;
+	}
+
+	/**
+	 * Starts a background writer for the pool, replacing the current one.
+	 * 
+	 * @param lowRatio
+	 *            the fraction of dirty buffers that the writer stops at
+	 * @param highRatio
+	 *            the fraction of dirty buffers above which the writer starts
+	 * @param interval
+	 *            the time between two rounds of the writer, in milliseconds
+	 * @author Team F
+	 */
+	void startWriter(double lowRatio, double highRatio, long interval) {
+		stopWriter();
+		writer = new BufferWriter(this, lowRatio, highRatio, interval);
+		writer.start();
+	}
+
+	/**
+	 * Stops the background writer of the pool, if there is one.
+	 * 
+	 * @author Team F
+	 */
+	void stopWriter() {
+		BufferWriter w = writer;
+		writer = null;
+		if (w != null)
+			w.shutdown();
+	}
+
+	/**
+	 * Starts the sequential read-ahead of the pool, replacing the current one.
+	 * 
+	 * @param depth
+	 *            the number of blocks read ahead of a sequential scan
+	 * @param trigger
+	 *            the number of consecutive blocks that make a scan sequential
+	 * @author Team F
+	 */
+	void startReadAhead(int depth, int trigger) {
+		stopReadAhead();
+		readAhead = new ReadAhead(this, depth, trigger);
+		readAhead.start();
+	}
+
+	/**
+	 * Stops the read-ahead of the pool, if there is one.
+	 * 
+	 * @author Team F
+	 */
+	void stopReadAhead() {
+		ReadAhead ra = readAhead;
+		readAhead = null;
+		if (ra != null)
+			ra.shutdown();
+	}
+
+	/**
+	 * Queues the specified blocks of a file to be read ahead, if the
+	 * read-ahead is running, and returns false otherwise.
+	 * 
+	 * @author Team F
+	 */
+	boolean prefetch(String filename, int startbnum, int endbnum) {
+		ReadAhead ra = readAhead;
+		if (ra == null)
+			return false;
+		ra.request(filename, startbnum, endbnum);
+		return true;
+	}
+
+	/**
+	 * Reports a miss, or the first pin of a block that was read ahead, to the
+	 * read-ahead. Other hits are not reported, so that pinning a block that
+	 * is already in the pool never looks up the stream of its file.
+	 * 
+	 * @author Team F
+	 */
+	private void noteAccess(Block blk) {
+		ReadAhead ra = readAhead;
+		if (ra != null)
+			ra.access(blk);
+	}
+
+	/**
+	 * Returns the blocks resident in the pool, hottest first: the pinned
+	 * blocks, then the unpinned ones in the reverse of the order in which the
+	 * replacement policy would replace them. Blocks of temporary files are
+	 * left out, since those files are deleted when the database is opened.
+	 * 
+	 * @author Team F
+	 */
+	List<Block> hotSet() {
+		List<Buffer> victims;
+		synchronized (this) {
+			victims = policy.victimOrder();
 		}
+		List<Block> blocks = new ArrayList<Block>();
+		for (Map.Entry<Block, Buffer> e : bufferPoolMap.entrySet())
+			if (e.getValue().isPinned())
+				blocks.add(e.getKey());
+		for (int i = victims.size() - 1; i >= 0; i--) {
+			Buffer buff = victims.get(i);
+			Block blk = buff.block();
+			if (blk != null && bufferPoolMap.get(blk) == buff)
+				blocks.add(blk);
+		}
+		List<Block> hot = new ArrayList<Block>();
+		Set<Block> seen = new HashSet<Block>();
+		for (Block blk : blocks)
+			if (!blk.fileName().startsWith("temp") && seen.add(blk))
+				hot.add(blk);
+		return hot;
+	}
+
+	/**
+	 * Starts saving the hot set of the pool periodically to the specified
+	 * file, replacing the current saver.
+	 * 
+	 * @param file
+	 *            the file that holds the hot set
+	 * @param interval
+	 *            the time between two saves, in milliseconds
+	 * @author Team F
+	 */
+	void startHotSet(File file, long interval) {
+		stopHotSet();
+		hotSet = new HotSet(this, file, interval);
+		hotSet.start();
+	}
+
+	/**
+	 * Stops saving the hot set of the pool, if it is saved, after saving it
+	 * one last time.
+	 * 
+	 * @author Team F
+	 */
+	void stopHotSet() {
+		HotSet hs = hotSet;
+		hotSet = null;
+		if (hs != null)
+			hs.shutdown();
+	}
+
+	/**
+	 * Queues the hottest blocks saved in the specified file to be read by the
+	 * read-ahead. At most half of the pool is reloaded, since the read-ahead
+	 * does not replace the last half of the unpinned buffers. The blocks are
+	 * sorted and queued in runs of consecutive blocks, so that each file is
+	 * read sequentially.
+	 * 
+	 * @param file
+	 *            the file that holds the hot set
+	 * @return the number of blocks queued
+	 * @author Team F
+	 */
+	int warmUp(File file) {
+		ReadAhead ra = readAhead;
+		if (ra == null)
+			return 0;
+		List<Block> blocks = HotSet.load(file, poolLength / 2);
+		List<Map.Entry<Block, Buffer>> sorted = new ArrayList<Map.Entry<Block, Buffer>>();
+		for (Block blk : blocks)
+			sorted.add(new AbstractMap.SimpleEntry<Block, Buffer>(blk, null));
+		Collections.sort(sorted, BLOCK_ORDER);
+		int i = 0;
+		while (i < sorted.size()) {
+			Block first = sorted.get(i).getKey();
+			int j = i + 1;
+			while (j < sorted.size() && sorted.get(j).getKey().fileId() == first.fileId()
+					&& sorted.get(j).getKey().number() == first.number() + (j - i))
+				j++;
+			ra.request(first.fileName(), first.number(), first.number() + (j - i) - 1);
+			i = j;
+		}
+		return sorted.size();
+	}
+
+	/**
+	 * Returns the number of dirty buffers in the pool.
+	 * 
+	 * @author Team F
+	 */
+	int dirtyCount() {
+		int count = 0;
+		for (Buffer buff : bufferPoolMap.values())
+			if (buff.isDirty())
+				count++;
+		return count;
+	}
+
+	/**
+	 * Writes unpinned dirty buffers in block order until at most the
+	 * specified number of buffers are dirty. The log is first flushed once up
+	 * to the last LSN of the buffers, as the WAL rule requires. Each buffer is
+	 * claimed while it is written, so that it is neither pinned nor replaced
+	 * meanwhile; buffers that cannot be claimed, or that were replaced since
+	 * they were looked at, are skipped.
+	 * 
+	 * @param lowDirty
+	 *            the number of dirty buffers to stop at
+	 * @return the number of buffers written
+	 * @author Team F
+	 */
+	int writeDirtyBuffers(int lowDirty) {
+		List<Map.Entry<Block, Buffer>> candidates = new ArrayList<Map.Entry<Block, Buffer>>();
+		int dirty = 0;
+		int maxLsn = -1;
+		for (Map.Entry<Block, Buffer> e : bufferPoolMap.entrySet()) {
+			Buffer buff = e.getValue();
+			if (buff.isDirty()) {
+				dirty++;
+				if (!buff.isPinned()) {
+					candidates.add(e);
+					maxLsn = Math.max(maxLsn, buff.logSequenceNumber());
+				}
+			}
+		}
+		if (dirty <= lowDirty)
+			return 0;
+		Collections.sort(candidates, BLOCK_ORDER);
+		if (maxLsn >= 0)
+			SimpleDB.logMgr().flush(maxLsn);
+
+		int written = 0;
+		for (Map.Entry<Block, Buffer> e : candidates) {
+			if (dirty - written <= lowDirty)
+				break;
+			Buffer buff = e.getValue();
+			if (!buff.claim())
+				continue;
+			try {
+				if (e.getKey().equals(buff.block()) && buff.isDirty()) {
+					buff.flush();
+					written++;
+				}
+			} finally {
+				// an unpin that happened while the buffer was claimed did
+				// not reach the policy
+				buff.unclaim();
+				synchronized (this) {
+					if (buff.pinCount() == 0)
+						policy.unpin(buff);
+				}
+			}
+		}
+		backgroundWrites.addAndGet(written);
+		return written;
+	}
+
+	/**
+	 * Returns the number of dirty victims that were written by the
+	 * transaction that needed the buffer.
+	 * 
+	 * @author Team F
+	 */
+	long syncWrites() {
+		return syncWrites.get();
+	}
+
+	/**
+	 * Returns the number of buffers written by the background writer.
+	 * 
+	 * @author Team F
+	 */
+	long backgroundWrites() {
+		return backgroundWrites.get();
 	}
 
 	/**
@@ -286,14 +1386,40 @@ class BasicBufferMgr {
 	 * 
 	 * @return bufferPoolMap
 	 */
-	public HashMap<Block, Buffer> getBufferPoolMap() {
+	public Map<Block, Buffer> getBufferPoolMap() {
 		return bufferPoolMap;
 	}
 
 	/**
-	 * Methods to help run JUnit Test cases resets the numAvailable count
+	 * Methods to help run JUnit Test cases resets the numAvailable count, and
+	 * forgets the buffers that the test cases removed from the bufferPoolMap
 	 */
-	public void resetNumAvailable() {
-		numAvailable = poolLength;
+	public synchronized void resetNumAvailable() {
+		numAvailable.set(poolLength);
+		numFrames = bufferPoolMap.size();
+	}
+
+	/**
+	 * Methods to help run JUnit Test cases rebuilds the replacement candidates
+	 * of the policy from the bufferPoolMap, so that buffers the test cases
+	 * removed from the map are never chosen as victims. Draining stops when a
+	 * policy that never forgets its buffers (such as CLOCK) returns the same
+	 * victim twice.
+	 */
+	public synchronized void resetPolicy() {
+		Set<Buffer> seen = new HashSet<Buffer>();
+		Buffer buff = policy.evict();
+		while (buff != null && seen.add(buff)) {
+			buff.unclaim();
+			buff = policy.evict();
+		}
+		if (buff != null)
+			buff.unclaim();
+		for (Buffer b : bufferPoolMap.values()) {
+			if (b.pinCount() == 0) {
+				policy.admit(b);
+				policy.unpin(b);
+			}
+		}
 	}
 }
@@ -1,5 +1,11 @@
 package simpledb.buffer;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import simpledb.server.SimpleDB;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
@@ -15,21 +21,59 @@ import simpledb.log.LogMgr;
  */
 
 public class Buffer {
-	private Page contents = new Page();
-	private Block blk = null;
-	private int pins = 0;
-	private int modifiedBy = -1; // negative means not modified
-	private int logSequenceNumber = -1; // negative means no corresponding log record
+	/**
+	 * Pin count value of a buffer that the pool is assigning to a block. A
+	 * claimed buffer cannot be pinned. New buffers start out claimed.
+	 * @author Team F
+	 */
+	static final int CLAIMED = -1;
+
+	private Page contents;
+	private volatile Block blk = null;
+	private AtomicInteger pins = new AtomicInteger(CLAIMED);
+	private volatile int modifiedBy = -1; // negative means not modified
+	private volatile int logSequenceNumber = -1; // negative means no corresponding log record
 
 	/**
-	 * The below two variables are used in the LRU(2) replacement policy
-	 * And to add buffer ID to the Buffer Class
+	 * The below variables add buffer ID to the Buffer Class
+	 * and hold the bookkeeping of the replacement policy
 	 * @author Team F
 	 */
-	private double lastPin = 0; // stores the K distance pin time
-	private double secondLastPin = 0; // stores the K-1 distance (more recent) pin time
 	static int numBuffers = 0;
 	private int buffId;
+	private Object policyState = null;
+	private BasicBufferMgr pool = null;
+
+	/**
+	 * The number of threads waiting for the claim on the buffer to end, see
+	 * {@link #awaitClaim(Map, Block)}.
+	 * @author Team F
+	 */
+	private volatile int claimWaiters = 0;
+
+	/**
+	 * Set while the buffer holds a block that the read-ahead read and that
+	 * has not been pinned since, see {@link #takePrefetched()}.
+	 * @author Team F
+	 */
+	private volatile boolean prefetched = false;
+
+	/**
+	 * The latch of the page. Reads of the page hold it shared and
+	 * modifications hold it exclusive, so that readers of a hot page run in
+	 * parallel and a page is never written to disk in the middle of a
+	 * modification.
+	 * @author Team F
+	 */
+	private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+
+	/**
+	 * Set while the block of the buffer is being read. The buffer is already
+	 * in the pool meanwhile, pinned, so that a second pinner of the block
+	 * finds it and waits for the read instead of reading the block again.
+	 * @author Team F
+	 */
+	private volatile boolean reading = false;
 	
 
 	/**
@@ -47,7 +91,20 @@ public class Buffer {
 	 * @author Team F
 	 */
 	public Buffer() {
+		this(null, new Page());
+	}
+
+	/**
+	 * Creates a buffer of the specified pool. The pool is told which
+	 * transactions modify the buffer, so that a transaction can flush its
+	 * buffers without looking at every buffer of the pool. The page is
+	 * normally a frame of the {@link PageArena} of the pool.
+	 * @author Team F
+	 */
+	Buffer(BasicBufferMgr pool, Page contents) {
 		this.buffId = ++numBuffers;
+		this.pool = pool;
+		this.contents = contents;
 	}
 	
 	/**
@@ -70,7 +127,12 @@ public class Buffer {
 	 * @return the integer value at that offset
 	 */
 	public int getInt(int offset) {
-		return contents.getInt(offset);
+		latch.readLock().lock();
+		try {
+			return contents.getInt(offset);
+		} finally {
+			latch.readLock().unlock();
+		}
 	}
 
 	/**
@@ -83,7 +145,12 @@ public class Buffer {
 	 * @return the string value at that offset
 	 */
 	public String getString(int offset) {
-		return contents.getString(offset);
+		latch.readLock().lock();
+		try {
+			return contents.getString(offset);
+		} finally {
+			latch.readLock().unlock();
+		}
 	}
 
 	/**
@@ -102,10 +169,16 @@ public class Buffer {
 	 *            the LSN of the corresponding log record
 	 */
 	public void setInt(int offset, int val, int txnum, int lsn) {
-		modifiedBy = txnum;
-		if (lsn >= 0)
-			logSequenceNumber = lsn;
-		contents.setInt(offset, val);
+		noteModifiedBy(txnum);
+		latch.writeLock().lock();
+		try {
+			modifiedBy = txnum;
+			if (lsn >= 0)
+				logSequenceNumber = lsn;
+			contents.setInt(offset, val);
+		} finally {
+			latch.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -124,10 +197,67 @@ public class Buffer {
 	 *            the LSN of the corresponding log record
 	 */
 	public void setString(int offset, String val, int txnum, int lsn) {
-		modifiedBy = txnum;
-		if (lsn >= 0)
-			logSequenceNumber = lsn;
-		contents.setString(offset, val);
+		noteModifiedBy(txnum);
+		latch.writeLock().lock();
+		try {
+			modifiedBy = txnum;
+			if (lsn >= 0)
+				logSequenceNumber = lsn;
+			contents.setString(offset, val);
+		} finally {
+			latch.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Latches the page shared, for a caller that reads several values of the
+	 * page that must be consistent with each other. Other readers may hold the
+	 * latch at the same time; modifications wait until it is released. The
+	 * latch is reentrant, and the get methods may be called while holding it.
+	 * 
+	 * @author Team F
+	 */
+	public void latchShared() {
+		latch.readLock().lock();
+	}
+
+	/**
+	 * Releases a shared latch taken by {@link #latchShared()}.
+	 * 
+	 * @author Team F
+	 */
+	public void unlatchShared() {
+		latch.readLock().unlock();
+	}
+
+	/**
+	 * Latches the page exclusive, for a caller that modifies several values of
+	 * the page, so that no reader and no write to disk sees the page halfway
+	 * through. The get and set methods may be called while holding it.
+	 * 
+	 * @author Team F
+	 */
+	public void latchExclusive() {
+		latch.writeLock().lock();
+	}
+
+	/**
+	 * Releases an exclusive latch taken by {@link #latchExclusive()}.
+	 * 
+	 * @author Team F
+	 */
+	public void unlatchExclusive() {
+		latch.writeLock().unlock();
+	}
+
+	/**
+	 * Reports the first modification of the buffer by a transaction to the
+	 * pool.
+	 * @author Team F
+	 */
+	private void noteModifiedBy(int txnum) {
+		if (pool != null && txnum >= 0 && modifiedBy != txnum)
+			pool.noteModified(this, txnum);
 	}
 
 	/**
@@ -139,23 +269,79 @@ public class Buffer {
 		return blk;
 	}
 
+	/**
+	 * Returns the pool that the buffer belongs to, or null if the buffer was
+	 * created outside of any pool.
+	 * 
+	 * @author Team F
+	 */
+	BasicBufferMgr pool() {
+		return pool;
+	}
+
+	/**
+	 * Returns the page of the buffer, so that the pool can reuse it when the
+	 * buffer is dropped.
+	 * 
+	 * @author Team F
+	 */
+	Page page() {
+		return contents;
+	}
+
 	/**
 	 * Writes the page to its disk block if the page is dirty. The method ensures
 	 * that the corresponding log record has been written to disk prior to writing
 	 * the page to disk.
 	 */
-	void flush() {
+	synchronized void flush() {
 		/**
 		 * Enabled flush for log page buffers
 		 * @author Team F
 		 */
 		if (modifiedBy >= 0 || modifiedBy == LogMgr.LM_TXN_ID) {
 			SimpleDB.logMgr().flush(logSequenceNumber);
-			contents.write(blk);
-			modifiedBy = -1;
+			latch.readLock().lock();
+			try {
+				contents.write(blk);
+				modifiedBy = -1;
+			} finally {
+				latch.readLock().unlock();
+			}
 		}
 	}
 	
+	/**
+	 * Forgets the modifications of the page, whose block belongs to a file
+	 * that was deleted, so that the page is never written.
+	 * 
+	 * @author Team F
+	 */
+	synchronized void discard() {
+		modifiedBy = -1;
+		logSequenceNumber = -1;
+	}
+
+	/**
+	 * Returns true if the page has been modified since it was last written,
+	 * including the pages of the log.
+	 * 
+	 * @author Team F
+	 */
+	boolean isDirty() {
+		return modifiedBy >= 0 || modifiedBy == LogMgr.LM_TXN_ID;
+	}
+
+	/**
+	 * Returns the LSN of the last log record that describes a modification of
+	 * the page, or a negative value if there is none.
+	 * 
+	 * @author Team F
+	 */
+	int logSequenceNumber() {
+		return logSequenceNumber;
+	}
+
 	/**
 	 * Writes the page to its disk block. 
 	 * To be used only by log block buffer
@@ -164,49 +350,139 @@ public class Buffer {
 	 */
 	public void forceFlush() {
 		if(modifiedBy == LogMgr.LM_TXN_ID) {
-			contents.write(blk);
-			modifiedBy = -1;
+			latch.readLock().lock();
+			try {
+				contents.write(blk);
+				modifiedBy = -1;
+			} finally {
+				latch.readLock().unlock();
+			}
 		}
 	}
 	
 	/**
-	 * Increases the buffer's pin count. and also update the last access times
+	 * Increases the buffer's pin count, unless the buffer is claimed. The pin
+	 * count is atomic, so that a buffer that is already in the pool can be
+	 * pinned without holding any lock. The pin times that the replacement
+	 * policy needs are recorded by the policy itself, see
+	 * {@link ReplacementPolicy#pin(Buffer)}.
 	 * 
-	 * The pin times are updated with the below logic
-	 * 
-	 * If the block is being pinned for the first time
-	 * 
-	 * --> Update the lastPin (this stores K back distance) with the current pin time
+	 * @return the pin count before the call, or {@link #CLAIMED} if the buffer
+	 *         is claimed and was not pinned
+	 * @author Team F
+	 */
+	int tryPin() {
+		while (true) {
+			int n = pins.get();
+			if (n == CLAIMED)
+				return CLAIMED;
+			if (pins.compareAndSet(n, n + 1))
+				return n;
+		}
+	}
+
+	/**
+	 * Decreases the buffer's pin count.
 	 * 
-	 * If the block is being pinned for second time
+	 * @return the pin count after the call
+	 */
+	int unpin() {
+		return pins.decrementAndGet();
+	}
+
+	/**
+	 * Claims an unpinned buffer so that it can be assigned to another block.
 	 * 
-	 * --> Update the secondLastPin (this stores K-1 back distance) with the current pin time
+	 * @return true if the buffer was unpinned and is now claimed
+	 * @author Team F
+	 */
+	boolean claim() {
+		return pins.compareAndSet(0, CLAIMED);
+	}
+
+	/**
+	 * Gives up the claim on a buffer, leaving it unpinned.
 	 * 
-	 * For other instances of pinning
+	 * @author Team F
+	 */
+	void unclaim() {
+		if (pins.compareAndSet(CLAIMED, 0))
+			wakeClaimWaiters();
+	}
+
+	/**
+	 * Turns a claimed buffer into a buffer pinned once, after it has been
+	 * assigned to its new block.
 	 * 
-	 * --> Update lastPin with the value in secondLastPin --> Update secondLastPin
-	 * with the current pin time
+	 * @author Team F
+	 */
+	void pinClaimed() {
+		pins.set(1);
+		wakeClaimWaiters();
+	}
+
+	/**
+	 * Waits while the buffer is claimed and the specified map of the pool
+	 * still maps the block to it, that is until the thread that claimed it
+	 * publishes it, gives it back, or removes its old mapping.
 	 * 
 	 * @author Team F
 	 */
-	void pin() {
-		pins++;
+	void awaitClaim(Map<Block, Buffer> map, Block b) {
+		boolean interrupted = false;
+		synchronized (this) {
+			claimWaiters++;
+			try {
+				while (pins.get() == CLAIMED && map.get(b) == this) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				claimWaiters--;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
 
-		if (this.lastPin == 0) {
-			this.lastPin = BasicBufferMgr.counter;
-		} else if (this.secondLastPin == 0) {
-			this.secondLastPin = BasicBufferMgr.counter;
-		} else {
-			this.lastPin = secondLastPin;
-			this.secondLastPin = BasicBufferMgr.counter;
+	/**
+	 * Wakes up the threads waiting in {@link #awaitClaim(Map, Block)}. Called
+	 * when the claim on the buffer ends and when the pool removes a mapping
+	 * of the buffer while it is claimed.
+	 * 
+	 * @author Team F
+	 */
+	void wakeClaimWaiters() {
+		if (claimWaiters > 0) {
+			synchronized (this) {
+				notifyAll();
+			}
 		}
 	}
 
 	/**
-	 * Decreases the buffer's pin count.
+	 * Marks the buffer as filled by the read-ahead.
+	 * 
+	 * @author Team F
 	 */
-	void unpin() {
-		pins--;
+	void setPrefetched() {
+		prefetched = true;
+	}
+
+	/**
+	 * Returns true, and clears the mark, if the buffer was filled by the
+	 * read-ahead and this is the first pin of its block since.
+	 * 
+	 * @author Team F
+	 */
+	boolean takePrefetched() {
+		if (!prefetched)
+			return false;
+		prefetched = false;
+		return true;
 	}
 
 	/**
@@ -216,7 +492,16 @@ public class Buffer {
 	 * @return true if the buffer is pinned
 	 */
 	boolean isPinned() {
-		return pins > 0;
+		return pins.get() > 0;
+	}
+
+	/**
+	 * Returns the current pin count, or {@link #CLAIMED}.
+	 * 
+	 * @author Team F
+	 */
+	int pinCount() {
+		return pins.get();
 	}
 
 	/**
@@ -232,24 +517,126 @@ public class Buffer {
 	}
 
 	/**
-	 * Reads the contents of the specified block into the buffer's page. If the
-	 * buffer was dirty, then the contents of the previous page are first written to
-	 * disk.
+	 * Assigns the buffer to the specified block, whose contents the pool then
+	 * reads into the buffer's page. If the buffer was dirty, then the contents
+	 * of the previous page are first written to disk. The buffer is in I/O
+	 * until {@link #endRead(boolean)} is called.
 	 * 
 	 * @param b
 	 *            a reference to the data block
+	 * @author Team F
 	 */
-	void assignToBlock(Block b) {
+	synchronized void beginRead(Block b) {
 		flush();
+		prefetched = false;
 		blk = b;
-		contents.read(blk);
-		pins = 0;
+		reading = true;
+	}
+
+	/**
+	 * Ends the I/O of the buffer and wakes up the pinners that wait for it.
+	 * A buffer whose read failed is left without a block, so that they give
+	 * it up.
+	 * 
+	 * @param ok
+	 *            false if the read failed
+	 * @author Team F
+	 */
+	synchronized void endRead(boolean ok) {
+		if (!ok)
+			blk = null;
+		reading = false;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the block of the buffer has been read, if it is being read.
+	 * 
+	 * @author Team F
+	 */
+	void awaitRead() {
+		if (!reading)
+			return;
+		boolean interrupted = false;
+		synchronized (this) {
+			while (reading) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Writes the pages of buffers that hold a run of adjacent blocks with a
+	 * single write, after the log records of their modifications. The
+	 * buffers are locked in the order of their ids, not of their blocks,
+	 * since a buffer may have been given another block since the run was
+	 * collected and two threads must never lock the same buffers in opposite
+	 * orders; they are then latched in block order. If a buffer no longer
+	 * holds its block of the run, or is no longer dirty, because it was
+	 * written or replaced meanwhile, the dirty buffers are written one by one
+	 * instead.
+	 * 
+	 * @param first
+	 *            a reference to the first block of the run
+	 * @param buffs
+	 *            the buffers, in block order
+	 * @author Team F
+	 */
+	static void flushRun(Block first, Buffer[] buffs) {
+		Buffer[] lockOrder = buffs.clone();
+		Arrays.sort(lockOrder, Comparator.comparingInt(Buffer::getBufferId));
+		flushRun(first, buffs, lockOrder, 0);
+	}
+
+	private static void flushRun(Block first, Buffer[] buffs, Buffer[] lockOrder, int locked) {
+		if (locked < lockOrder.length) {
+			synchronized (lockOrder[locked]) {
+				flushRun(first, buffs, lockOrder, locked + 1);
+			}
+			return;
+		}
+		// the monitors of all the buffers are held
+		int maxLsn = -1;
+		boolean intact = true;
+		for (int i = 0; i < buffs.length; i++) {
+			Block blk = buffs[i].blk;
+			intact &= buffs[i].isDirty() && blk != null && blk.fileId() == first.fileId()
+					&& blk.number() == first.number() + i;
+			maxLsn = Math.max(maxLsn, buffs[i].logSequenceNumber);
+		}
+		if (!intact) {
+			for (Buffer buff : buffs)
+				buff.flush();
+			return;
+		}
+		SimpleDB.logMgr().flush(maxLsn);
+		Page[] pages = new Page[buffs.length];
+		int latched = 0;
+		try {
+			for (; latched < buffs.length; latched++) {
+				buffs[latched].latch.readLock().lock();
+				pages[latched] = buffs[latched].contents;
+			}
+			Page.write(first, pages);
+			for (Buffer buff : buffs)
+				buff.modifiedBy = -1;
+		} finally {
+			for (int i = 0; i < latched; i++)
+				buffs[i].latch.readLock().unlock();
+		}
 	}
 
 	/**
 	 * Initializes the buffer's page according to the specified formatter, and
 	 * appends the page to the specified file. If the buffer was dirty, then the
-	 * contents of the previous page are first written to disk.
+	 * contents of the previous page are first written to disk. If the page
+	 * cannot be appended, the buffer is left without a block.
 	 * 
 	 * @param filename
 	 *            the name of the file
@@ -258,29 +645,59 @@ public class Buffer {
 	 */
 	void assignToNew(String filename, PageFormatter fmtr) {
 		flush();
+		prefetched = false;
 		fmtr.format(contents);
-		blk = contents.append(filename);
-		pins = 0;
+		try {
+			blk = contents.append(filename);
+		} catch (RuntimeException e) {
+			// the page no longer holds the old block
+			blk = null;
+			throw e;
+		}
 	}
 
 	/**
-	 * Getter and Setter method for Pin times.
+	 * Moves the buffer, which the caller keeps pinned, to a new block that is
+	 * formatted and appended to the specified file like
+	 * {@link #assignToNew(String, PageFormatter)}. The page is latched
+	 * exclusive meanwhile, so that no write of the page sees it half
+	 * formatted. If the block cannot be appended, the page is read back from
+	 * its old block, which was written first, and the buffer keeps it.
 	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @param fmtr
+	 *            a page formatter, used to initialize the page
 	 * @author Team F
 	 */
-	public double getlastPin() {
-		return this.lastPin;
-	}
-
-	public void setLastPin(long lastPin) {
-		this.lastPin = lastPin;
+	synchronized void moveToNew(String filename, PageFormatter fmtr) {
+		flush();
+		latch.writeLock().lock();
+		try {
+			Block old = blk;
+			fmtr.format(contents);
+			try {
+				blk = contents.append(filename);
+			} catch (RuntimeException e) {
+				contents.read(old);
+				throw e;
+			}
+		} finally {
+			latch.writeLock().unlock();
+		}
 	}
 
-	public double getSecondLastPin() {
-		return this.secondLastPin;
+	/**
+	 * Getter and Setter method for the bookkeeping that the replacement policy
+	 * of the pool keeps for this buffer. The state is opaque to the buffer.
+	 * 
+	 * @author Team F
+	 */
+	Object policyState() {
+		return policyState;
 	}
 
-	public void setSecondLastPin(long secondLastPin) {
-		this.secondLastPin = secondLastPin;
+	void setPolicyState(Object policyState) {
+		this.policyState = policyState;
 	}
-}
\ No newline at end of file
+}
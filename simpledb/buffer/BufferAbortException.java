@@ -6,4 +6,16 @@ package simpledb.buffer;
  * @author Edward Sciore
  */
 @SuppressWarnings("serial")
-public class BufferAbortException extends RuntimeException {}
+public class BufferAbortException extends RuntimeException {
+   public BufferAbortException() {}
+   
+   /**
+    * Creates an exception explaining why the request
+    * could not be satisfied.
+    * @param msg the reason
+    * @author Team F
+    */
+   public BufferAbortException(String msg) {
+      super(msg);
+   }
+}
@@ -1,6 +1,17 @@
 package simpledb.buffer;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import simpledb.file.*;
 
@@ -14,11 +25,50 @@ import simpledb.file.*;
  * waiting for a buffer for an excessive amount of time (currently, 10 seconds)
  * then a {@link BufferAbortException} is thrown.
  * 
+ * Pinning does not lock the buffer manager, and a block that is already in
+ * the pool is pinned at once, even while threads wait. The waiting list is a FIFO
+ * queue: while threads are waiting, a request that needs a new buffer joins
+ * the end of the queue instead of trying first, and only the thread at the
+ * head of the queue may take a buffer. When a buffer is unpinned, only that
+ * thread is woken up, and once it has its buffer it wakes up the next one if
+ * buffers are still available. The waits and aborts are counted. The log
+ * manager keeps its buffer and moves it to each new block of the log (see
+ * {@link #moveToNew(Buffer, String, PageFormatter) moveToNew}), so its
+ * appends never join the queue. (Team F)
+ * 
+ * The buffers may be split into several named pools, each with its own size
+ * and replacement policy, so that for instance the catalog and the indexes
+ * keep their pages while large temporary tables are read. Each file is
+ * assigned to a pool by the first rule whose pattern matches its name, and
+ * to the default pool if there is none. Each pool has its own waiting list,
+ * background writer and read-ahead. (Team F)
+ * 
+ * So that a single transaction cannot pin every buffer of a pool and make
+ * the others wait and abort, a transaction may pin at most a fraction of
+ * the buffers of each pool; see {@link #checkPinQuota(String, int)}. (Team F)
+ * 
  * @author Edward Sciore
  */
 public class BufferMgr {
 	private static final long MAX_TIME = 10000; // 10 seconds
+
+	/**
+	 * The name of the pool that holds the files that no rule assigns to
+	 * another pool.
+	 * 
+	 * @author Team F
+	 */
+	public static final String DEFAULT_POOL = "default";
+
 	private BasicBufferMgr bufferMgr;
+	private Pool defaultPool;
+	private volatile Map<String, Pool> pools = new LinkedHashMap<String, Pool>();
+	private volatile List<Rule> rules = new ArrayList<Rule>();
+	private ConcurrentHashMap<String, Pool> routes = new ConcurrentHashMap<String, Pool>();
+	private volatile double pinQuota = 1.0;
+	private AtomicLong waits = new AtomicLong(0);
+	private AtomicLong waitTime = new AtomicLong(0);
+	private AtomicLong aborts = new AtomicLong(0);
 
 	/**
 	 * Creates a new buffer manager having the specified number of buffers. This
@@ -32,16 +82,209 @@ public class BufferMgr {
 	 * @param numbuffers
 	 *            the number of buffer slots to allocate
 	 */
-	
+	public BufferMgr(int numbuffers) {
+		this(numbuffers, new LRUKPolicy(2, 0));
+	}
+
 	/**
+	 * Creates a new buffer manager having the specified number of buffers and
+	 * the specified replacement policy.
+	 * 
 	 * Counter reset of Buffer required for JUnit tests
 	 * @author Team F
+	 * 
+	 * @param numbuffers
+	 *            the number of buffer slots to allocate
+	 * @param policy
+	 *            the replacement policy of the pool
 	 */
-	public BufferMgr(int numbuffers) {
-		bufferMgr = new BasicBufferMgr(numbuffers);
+	public BufferMgr(int numbuffers, ReplacementPolicy policy) {
+		bufferMgr = new BasicBufferMgr(numbuffers, policy);
+		defaultPool = new Pool(DEFAULT_POOL, bufferMgr);
+		pools.put(DEFAULT_POOL, defaultPool);
 		Buffer.numBuffers = 0;
 	}
 
+	/**
+	 * Adds a pool of the specified size and replacement policy. Files are
+	 * assigned to it through {@link #assign(String, String) assign}. The
+	 * background writer, the read-ahead and the hot set are started for the
+	 * pools that exist when they are started.
+	 * 
+	 * @param name
+	 *            the name of the pool
+	 * @param numbuffers
+	 *            the number of buffers of the pool
+	 * @param policy
+	 *            the replacement policy of the pool
+	 * @author Team F
+	 */
+	public synchronized void addPool(String name, int numbuffers, ReplacementPolicy policy) {
+		if (pools.containsKey(name))
+			throw new IllegalArgumentException("pool " + name + " already exists");
+		if (numbuffers < 1)
+			throw new IllegalArgumentException("invalid pool size " + numbuffers);
+		Map<String, Pool> newPools = new LinkedHashMap<String, Pool>(pools);
+		newPools.put(name, new Pool(name, new BasicBufferMgr(numbuffers, policy)));
+		pools = newPools;
+	}
+
+	/**
+	 * Determines whether there is a pool of the specified name.
+	 * 
+	 * @author Team F
+	 */
+	public boolean hasPool(String name) {
+		return pools.containsKey(name);
+	}
+
+	/**
+	 * Assigns the files whose name matches the specified regular expression
+	 * to the specified pool. Rules are tried in the order in which they were
+	 * added; assigning a pattern again replaces its rule. Blocks that are
+	 * already in another pool stay there until they are replaced, so the
+	 * rules of a file should be set before the file is used.
+	 * 
+	 * @param regex
+	 *            a regular expression matching whole file names
+	 * @param poolname
+	 *            the name of the pool
+	 * @author Team F
+	 */
+	public synchronized void assign(String regex, String poolname) {
+		Pool pool = pools.get(poolname);
+		if (pool == null)
+			throw new IllegalArgumentException("no pool " + poolname);
+		List<Rule> newRules = new ArrayList<Rule>();
+		boolean replaced = false;
+		for (Rule r : rules) {
+			if (r.pattern.pattern().equals(regex)) {
+				if (r.pool == pool)
+					return;
+				newRules.add(new Rule(r.pattern, pool));
+				replaced = true;
+			} else
+				newRules.add(r);
+		}
+		if (!replaced)
+			newRules.add(new Rule(Pattern.compile(regex), pool));
+		rules = newRules;
+		routes.clear();
+	}
+
+	/**
+	 * Returns the name of the pool that the specified file is assigned to.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @return the name of the pool
+	 * @author Team F
+	 */
+	public String poolName(String filename) {
+		return poolFor(filename).name;
+	}
+
+	/**
+	 * Sets the fraction of the buffers of each pool that a single
+	 * transaction may pin. A fraction of 1 lets a transaction pin a whole
+	 * pool.
+	 * 
+	 * @param ratio
+	 *            the fraction of a pool that a transaction may pin
+	 * @author Team F
+	 */
+	public void setPinQuota(double ratio) {
+		if (ratio <= 0 || ratio > 1)
+			throw new IllegalArgumentException("invalid pin quota " + ratio);
+		pinQuota = ratio;
+	}
+
+	/**
+	 * Returns the number of buffers of the pool of the specified file that a
+	 * single transaction may pin, which is at least one.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @return the pin quota of a transaction in that pool
+	 * @author Team F
+	 */
+	public int pinQuota(String filename) {
+		return quota(poolFor(filename));
+	}
+
+	/**
+	 * Returns the pin quota of a transaction in the default pool.
+	 * 
+	 * @author Team F
+	 */
+	public int pinQuota() {
+		return quota(defaultPool);
+	}
+
+	/**
+	 * Checks that a transaction that already pins the specified number of
+	 * buffers of the pool of a file may pin one more buffer of that pool,
+	 * and throws a {@link BufferAbortException} otherwise. Since the quota
+	 * follows the size of the pool, it shrinks when the pool does.
+	 * 
+	 * @param filename
+	 *            the name of the file of the block to pin
+	 * @param pinned
+	 *            the number of buffers of the pool that the transaction pins
+	 * @author Team F
+	 */
+	public void checkPinQuota(String filename, int pinned) {
+		Pool pool = poolFor(filename);
+		int quota = quota(pool);
+		if (pinned >= quota) {
+			aborts.incrementAndGet();
+			throw new BufferAbortException("transaction would pin more than " + quota + " buffers of pool " + pool.name);
+		}
+	}
+
+	private int quota(Pool pool) {
+		return Math.max(1, (int) (pinQuota * pool.basic.poolLength()));
+	}
+
+	/**
+	 * Returns the pool that the specified file is assigned to. The pools of
+	 * temporary tables are not cached, since each temporary table has a new
+	 * name and is used by one query only.
+	 */
+	private Pool poolFor(String filename) {
+		Pool pool = routes.get(filename);
+		if (pool == null) {
+			pool = defaultPool;
+			for (Rule r : rules) {
+				if (r.pattern.matcher(filename).matches()) {
+					pool = r.pool;
+					break;
+				}
+			}
+			if (!filename.startsWith("temp"))
+				routes.put(filename, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns the pool that the specified buffer belongs to.
+	 */
+	private Pool poolOf(Buffer buff) {
+		BasicBufferMgr basic = buff.pool();
+		for (Pool pool : pools.values())
+			if (pool.basic == basic)
+				return pool;
+		return defaultPool;
+	}
+
+	private Pool namedPool(String name) {
+		Pool pool = pools.get(name);
+		if (pool == null)
+			throw new IllegalArgumentException("no pool " + name);
+		return pool;
+	}
+
 	/**
 	 * Pins a buffer to the specified block, potentially waiting until a buffer
 	 * becomes available. If no buffer becomes available within a fixed time period,
@@ -51,20 +294,71 @@ public class BufferMgr {
 	 *            a reference to a disk block
 	 * @return the buffer pinned to that block
 	 */
-	public synchronized Buffer pin(Block blk) {
-		try {
-			long timestamp = System.currentTimeMillis();
-			Buffer buff = bufferMgr.pin(blk);
-			while (buff == null && !waitingTooLong(timestamp)) {
-				wait(MAX_TIME);
-				buff = bufferMgr.pin(blk);
-			}
-			if (buff == null)
-				throw new BufferAbortException();
+	public Buffer pin(Block blk) {
+		return pin(blk, null);
+	}
+
+	/**
+	 * Pins a buffer to the specified block like {@link #pin(Block)}. If the
+	 * block has to be read, the buffer is taken from the specified ring when
+	 * possible, so that a large scan does not replace the buffers of other
+	 * transactions.
+	 * 
+	 * @param blk
+	 *            a reference to a disk block
+	 * @param ring
+	 *            the buffer ring of the scan, or null
+	 * @return the buffer pinned to that block
+	 * @author Team F
+	 */
+	public Buffer pin(Block blk, BufferRing ring) {
+		Pool pool = poolFor(blk.fileName());
+		// a block that is already in the pool takes no buffer from the
+		// waiting threads, so it is pinned even when the queue is not empty
+		Buffer buff = pool.basic.pinResident(blk, ring);
+		if (buff != null)
 			return buff;
-		} catch (InterruptedException e) {
-			throw new BufferAbortException();
+		if (pool.numWaiters.get() == 0) {
+			buff = pool.basic.pin(blk, ring);
+			if (buff != null)
+				return buff;
 		}
+		return waitForBuffer(pool, blk, null, null, ring);
+	}
+
+	/**
+	 * Pins the blocks startbnum to endbnum of the specified file, reading the
+	 * blocks that are not in the pool with one vectored read for each run of
+	 * adjacent missing blocks. Either all the blocks are pinned or, if not
+	 * enough buffers become available within a fixed time period, none is
+	 * and a {@link BufferAbortException} is thrown.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @param startbnum
+	 *            the first block to pin
+	 * @param endbnum
+	 *            the last block to pin
+	 * @return the pinned buffers, in block order
+	 * @author Team F
+	 */
+	public Buffer[] pinRange(final String filename, final int startbnum, final int endbnum) {
+		final Pool pool = poolFor(filename);
+		int n = endbnum - startbnum + 1;
+		if (n > pool.basic.poolLength()) {
+			aborts.incrementAndGet();
+			throw new BufferAbortException("cannot pin " + n + " blocks in pool " + pool.name);
+		}
+		if (pool.numWaiters.get() == 0) {
+			Buffer[] buffs = pool.basic.pinRange(filename, startbnum, endbnum);
+			if (buffs != null)
+				return buffs;
+		}
+		return waitFor(pool, new Attempt<Buffer[]>() {
+			public Buffer[] attempt() {
+				return pool.basic.pinRange(filename, startbnum, endbnum);
+			}
+		});
 	}
 
 	/**
@@ -78,47 +372,121 @@ public class BufferMgr {
 	 *            the formatter used to initialize the page
 	 * @return the buffer pinned to that block
 	 */
-	public synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-		try {
-			long timestamp = System.currentTimeMillis();
-			Buffer buff = bufferMgr.pinNew(filename, fmtr);
-			while (buff == null && !waitingTooLong(timestamp)) {
-				wait(MAX_TIME);
-				buff = bufferMgr.pinNew(filename, fmtr);
-			}
-			if (buff == null)
-				throw new BufferAbortException();
-			return buff;
-		} catch (InterruptedException e) {
-			throw new BufferAbortException();
+	public Buffer pinNew(String filename, PageFormatter fmtr) {
+		return pinNew(filename, fmtr, null);
+	}
+
+	/**
+	 * Pins a buffer to a new block in the specified file like
+	 * {@link #pinNew(String, PageFormatter)}, taking the buffer from the
+	 * specified ring when possible.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @param fmtr
+	 *            the formatter used to initialize the page
+	 * @param ring
+	 *            the buffer ring of the scan, or null
+	 * @return the buffer pinned to that block
+	 * @author Team F
+	 */
+	public Buffer pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
+		Pool pool = poolFor(filename);
+		if (pool.numWaiters.get() == 0) {
+			Buffer buff = pool.basic.pinNew(filename, fmtr, ring);
+			if (buff != null)
+				return buff;
 		}
+		return waitForBuffer(pool, null, filename, fmtr, ring);
+	}
+
+	/**
+	 * Moves a buffer that the caller keeps pinned to a new block of the
+	 * specified file, which is formatted and appended like
+	 * {@link #pinNew(String, PageFormatter) pinNew}. The buffer keeps its
+	 * frame, so the call neither waits for a buffer nor joins the waiting
+	 * list. The log manager uses it, so that an append under its lock never
+	 * waits behind transactions that will need that lock. If the block
+	 * cannot be appended, the buffer keeps its old block.
+	 * 
+	 * @param buff
+	 *            the buffer, pinned by the caller
+	 * @param filename
+	 *            the name of the file, which must be in the pool of the buffer
+	 * @param fmtr
+	 *            the formatter used to initialize the page
+	 * @author Team F
+	 */
+	public void moveToNew(Buffer buff, String filename, PageFormatter fmtr) {
+		Pool pool = poolOf(buff);
+		if (poolFor(filename) != pool)
+			throw new IllegalArgumentException("file " + filename + " is not in pool " + pool.name);
+		pool.basic.moveToNew(buff, filename, fmtr);
 	}
 
 	/**
 	 * Unpins the specified buffer. If the buffer's pin count becomes 0, then the
-	 * threads on the wait list are notified.
+	 * thread that has been waiting the longest is notified.
 	 * 
 	 * @param buff
 	 *            the buffer to be unpinned
 	 */
-	public synchronized void unpin(Buffer buff) {
-		bufferMgr.unpin(buff);
-		if (!buff.isPinned())
-			notifyAll();
+	public void unpin(Buffer buff) {
+		Pool pool = poolOf(buff);
+		pool.basic.unpin(buff);
+		if (!buff.isPinned() && pool.numWaiters.get() > 0)
+			signalFirstWaiter(pool);
 	}
 
 	/**
 	 * Flushes the dirty buffers modified by the specified transaction.
 	 * 
+	 * Returns the files of the blocks that the transaction modified, so that
+	 * a commit forces those files and no others. (Team F)
+	 * 
 	 * @param txnum
 	 *            the transaction's id number
+	 * @return the names of the files that the transaction modified
 	 */
-	public void flushAll(int txnum) {
-		bufferMgr.flushAll(txnum);
+	public Set<String> flushAll(int txnum) {
+		Set<String> files = new HashSet<String>();
+		for (Pool pool : pools.values())
+			files.addAll(pool.basic.flushAll(txnum));
+		return files;
 	}
 
 	/**
-	 * Returns the number of available (ie unpinned) buffers.
+	 * Writes the dirty buffers of the specified file, each run of adjacent
+	 * blocks with one vectored write. Used for files that are written once
+	 * and then read, such as the runs of a sort.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @author Team F
+	 */
+	public void flushFile(String filename) {
+		poolFor(filename).basic.flushFile(filename);
+	}
+
+	/**
+	 * Drops the buffers of the specified file without writing them, and the
+	 * reads of the file that are queued, before the file is deleted. Used for
+	 * the files of temporary tables once they are no longer needed. The id of
+	 * the file stays registered until {@link FileMgr#delete(String)} releases
+	 * it, so this must be called first.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @author Team F
+	 */
+	public void dropFile(String filename) {
+		poolFor(filename).basic.dropFile(filename);
+		routes.remove(filename);
+	}
+
+	/**
+	 * Returns the number of available (ie unpinned) buffers of the default
+	 * pool.
 	 * 
 	 * @return the number of available buffers
 	 */
@@ -126,8 +494,403 @@ public class BufferMgr {
 		return bufferMgr.available();
 	}
 
-	private boolean waitingTooLong(long starttime) {
-		return System.currentTimeMillis() - starttime > MAX_TIME;
+	/**
+	 * Returns the number of available buffers of the pool that the specified
+	 * file is assigned to.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @return the number of available buffers
+	 * @author Team F
+	 */
+	public int available(String filename) {
+		return poolFor(filename).basic.available();
+	}
+
+	/**
+	 * Returns the number of buffers of the default pool.
+	 * 
+	 * @return the current size of the pool
+	 * @author Team F
+	 */
+	public int size() {
+		return bufferMgr.poolLength();
+	}
+
+	/**
+	 * Returns the number of buffers of the specified pool.
+	 * 
+	 * @param poolname
+	 *            the name of the pool
+	 * @return the current size of the pool
+	 * @author Team F
+	 */
+	public int size(String poolname) {
+		return namedPool(poolname).basic.poolLength();
+	}
+
+	/**
+	 * Grows or shrinks the default pool to the specified number of buffers
+	 * while it is used, like {@link #resize(String, int)}.
+	 * 
+	 * @param numbuffers
+	 *            the new number of buffers
+	 * @author Team F
+	 */
+	public void resize(int numbuffers) {
+		resize(DEFAULT_POOL, numbuffers);
+	}
+
+	/**
+	 * Grows or shrinks the specified pool to the specified number of buffers
+	 * while it is used. New buffers are allocated as they are needed, and the threads
+	 * waiting for a buffer can use them at once. When the pool shrinks,
+	 * unpinned buffers are written if they are dirty and dropped, in the order
+	 * chosen by the replacement policy; pinned buffers are dropped when they
+	 * are unpinned. The number of {@link #available() available} buffers, and
+	 * thus the estimates of {@link simpledb.multibuffer.BufferNeeds}, follow
+	 * the new size immediately.
+	 * 
+	 * @param poolname
+	 *            the name of the pool
+	 * @param numbuffers
+	 *            the new number of buffers
+	 * @author Team F
+	 */
+	public void resize(String poolname, int numbuffers) {
+		if (numbuffers < 1)
+			throw new IllegalArgumentException("invalid pool size " + numbuffers);
+		Pool pool = namedPool(poolname);
+		pool.basic.resize(numbuffers);
+		signalFirstWaiter(pool);
+	}
+
+	/**
+	 * Starts a background writer that keeps the number of dirty buffers
+	 * between the specified fractions of the pool, replacing the current
+	 * writer if there is one. The writer writes dirty buffers that are not
+	 * pinned, so that victims are usually clean. It needs the
+	 * {@link simpledb.log.LogMgr LogMgr}, so it cannot be started before the
+	 * log manager is created.
+	 * 
+	 * @param lowRatio
+	 *            the fraction of dirty buffers that the writer stops at
+	 * @param highRatio
+	 *            the fraction of dirty buffers above which the writer starts
+	 * @param interval
+	 *            the time between two rounds of the writer, in milliseconds
+	 * @author Team F
+	 */
+	public void startWriter(double lowRatio, double highRatio, long interval) {
+		if (lowRatio < 0 || lowRatio > highRatio || highRatio > 1)
+			throw new IllegalArgumentException("invalid dirty ratios " + lowRatio + ", " + highRatio);
+		for (Pool pool : pools.values())
+			pool.basic.startWriter(lowRatio, highRatio, interval);
+	}
+
+	/**
+	 * Stops the background writer, if there is one.
+	 * 
+	 * @author Team F
+	 */
+	public void stopWriter() {
+		for (Pool pool : pools.values())
+			pool.basic.stopWriter();
+	}
+
+	/**
+	 * Starts the sequential read-ahead, replacing the current one if there is
+	 * one. When a file is read block after block, the next blocks of the file
+	 * are read into free buffers in the background. The read-ahead needs the
+	 * {@link FileMgr}, so it cannot be started before the file manager is
+	 * created.
+	 * 
+	 * @param depth
+	 *            the number of blocks read ahead of a sequential scan
+	 * @param trigger
+	 *            the number of consecutive blocks that make a scan sequential
+	 * @author Team F
+	 */
+	public void startReadAhead(int depth, int trigger) {
+		if (depth < 1 || trigger < 1)
+			throw new IllegalArgumentException("invalid read-ahead " + depth + ", " + trigger);
+		for (Pool pool : pools.values())
+			pool.basic.startReadAhead(depth, trigger);
+	}
+
+	/**
+	 * Stops the read-ahead, if there is one.
+	 * 
+	 * @author Team F
+	 */
+	public void stopReadAhead() {
+		for (Pool pool : pools.values())
+			pool.basic.stopReadAhead();
+	}
+
+	/**
+	 * Asks for the specified blocks of a file to be read into the pool in the
+	 * background, if the read-ahead is running. The blocks are not pinned.
+	 * Returns false if the read-ahead of the pool of the file is not running.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @param startbnum
+	 *            the first block to read
+	 * @param endbnum
+	 *            the last block to read
+	 * @author Team F
+	 */
+	public boolean prefetch(String filename, int startbnum, int endbnum) {
+		return poolFor(filename).basic.prefetch(filename, startbnum, endbnum);
+	}
+
+	/**
+	 * Starts saving the hot set of the pool, that is the resident blocks
+	 * ordered from the hottest to the next victim of the replacement policy,
+	 * to the specified file every interval milliseconds, replacing the
+	 * current saver if there is one. The hot set of a pool other than the
+	 * default one is saved to a file named after the pool.
+	 * 
+	 * @param file
+	 *            the file that holds the hot set
+	 * @param interval
+	 *            the time between two saves, in milliseconds
+	 * @author Team F
+	 */
+	public void startHotSet(File file, long interval) {
+		if (interval < 1)
+			throw new IllegalArgumentException("invalid hot set interval " + interval);
+		for (Map.Entry<String, Pool> e : pools.entrySet())
+			e.getValue().basic.startHotSet(hotSetFile(file, e.getKey()), interval);
+	}
+
+	/**
+	 * Saves the hot set one last time and stops saving it, if it is saved.
+	 * 
+	 * @author Team F
+	 */
+	public void stopHotSet() {
+		for (Pool pool : pools.values())
+			pool.basic.stopHotSet();
+	}
+
+	/**
+	 * Reads the hottest blocks of a hot set saved by a previous run into the
+	 * pool in the background, if the read-ahead is running. The blocks are
+	 * read in file and block order. Called once recovery is done, so that the
+	 * blocks are read as recovery left them.
+	 * 
+	 * @param file
+	 *            the file that holds the hot set
+	 * @return the number of blocks queued to be read
+	 * @author Team F
+	 */
+	public int warmUp(File file) {
+		int queued = 0;
+		for (Map.Entry<String, Pool> e : pools.entrySet())
+			queued += e.getValue().basic.warmUp(hotSetFile(file, e.getKey()));
+		return queued;
+	}
+
+	private File hotSetFile(File file, String poolname) {
+		if (poolname.equals(DEFAULT_POOL))
+			return file;
+		return new File(file.getPath() + "." + poolname);
+	}
+
+	/**
+	 * Returns the number of dirty victims that had to be written by the
+	 * transaction that needed the buffer.
+	 * 
+	 * @author Team F
+	 */
+	public long syncWrites() {
+		long writes = 0;
+		for (Pool pool : pools.values())
+			writes += pool.basic.syncWrites();
+		return writes;
+	}
+
+	/**
+	 * Returns the number of buffers written by the background writer.
+	 * 
+	 * @author Team F
+	 */
+	public long backgroundWrites() {
+		long writes = 0;
+		for (Pool pool : pools.values())
+			writes += pool.basic.backgroundWrites();
+		return writes;
+	}
+
+	/**
+	 * Returns the number of pin requests that had to wait for a buffer,
+	 * including the ones that were aborted.
+	 * 
+	 * @author Team F
+	 */
+	public long waits() {
+		return waits.get();
+	}
+
+	/**
+	 * Returns the total time that pin requests spent waiting for a buffer,
+	 * in milliseconds.
+	 * 
+	 * @author Team F
+	 */
+	public long waitTime() {
+		return waitTime.get();
+	}
+
+	/**
+	 * Returns the number of pin requests that were aborted because no buffer
+	 * became available in time.
+	 * 
+	 * @author Team F
+	 */
+	public long aborts() {
+		return aborts.get();
+	}
+
+	/**
+	 * Queues the calling thread until it is at the head of the queue and a
+	 * buffer is available, then pins the block (or the new block, if blk is
+	 * null). Throws a {@link BufferAbortException} if that takes more than
+	 * MAX_TIME.
+	 * 
+	 * @author Team F
+	 */
+	private Buffer waitForBuffer(final Pool pool, final Block blk, final String filename, final PageFormatter fmtr,
+			final BufferRing ring) {
+		return waitFor(pool, new Attempt<Buffer>() {
+			public Buffer attempt() {
+				return (blk != null) ? pool.basic.pin(blk, ring) : pool.basic.pinNew(filename, fmtr, ring);
+			}
+		});
+	}
+
+	/**
+	 * Queues the calling thread until it is at the head of the queue of the
+	 * pool and the attempt succeeds, that is returns a non-null result.
+	 * Throws a {@link BufferAbortException} if that takes more than MAX_TIME.
+	 * 
+	 * @author Team F
+	 */
+	private <T> T waitFor(Pool pool, Attempt<T> attempt) {
+		Waiter me = new Waiter();
+		long timestamp = System.currentTimeMillis();
+		synchronized (pool.waiters) {
+			pool.waiters.addLast(me);
+			pool.numWaiters.incrementAndGet();
+		}
+		waits.incrementAndGet();
+		boolean done = false;
+		try {
+			while (true) {
+				if (isFirstWaiter(pool, me)) {
+					T result = attempt.attempt();
+					if (result != null) {
+						done = true;
+						return result;
+					}
+				}
+				long remaining = MAX_TIME - (System.currentTimeMillis() - timestamp);
+				if (remaining <= 0 || !me.await(remaining))
+					throw new BufferAbortException();
+			}
+		} finally {
+			synchronized (pool.waiters) {
+				pool.waiters.remove(me);
+				pool.numWaiters.decrementAndGet();
+			}
+			waitTime.addAndGet(System.currentTimeMillis() - timestamp);
+			if (!done)
+				aborts.incrementAndGet();
+			if (pool.basic.available() > 0)
+				signalFirstWaiter(pool);
+		}
+	}
+
+	private boolean isFirstWaiter(Pool pool, Waiter w) {
+		synchronized (pool.waiters) {
+			return pool.waiters.peekFirst() == w;
+		}
+	}
+
+	private void signalFirstWaiter(Pool pool) {
+		Waiter first;
+		synchronized (pool.waiters) {
+			first = pool.waiters.peekFirst();
+		}
+		if (first != null)
+			first.signal();
+	}
+
+	/**
+	 * One try of a waiting thread to get its buffers, which returns null if
+	 * there are not enough available buffers.
+	 */
+	private interface Attempt<T> {
+		T attempt();
+	}
+
+	/**
+	 * A pool of buffers and the threads waiting for one of its buffers.
+	 */
+	private static class Pool {
+		final String name;
+		final BasicBufferMgr basic;
+		final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+		final AtomicInteger numWaiters = new AtomicInteger(0);
+
+		Pool(String name, BasicBufferMgr basic) {
+			this.name = name;
+			this.basic = basic;
+		}
+	}
+
+	/**
+	 * Assigns the files whose name matches a pattern to a pool.
+	 */
+	private static class Rule {
+		final Pattern pattern;
+		final Pool pool;
+
+		Rule(Pattern pattern, Pool pool) {
+			this.pattern = pattern;
+			this.pool = pool;
+		}
+	}
+
+	/**
+	 * A thread waiting for a buffer. Each waiter is woken up separately, so
+	 * that an unpin does not wake up every waiting thread.
+	 */
+	private static class Waiter {
+		private boolean signaled = false;
+
+		/**
+		 * Waits until the waiter is signaled or the time is up.
+		 * 
+		 * @return false if the thread was interrupted
+		 */
+		synchronized boolean await(long millis) {
+			try {
+				if (!signaled)
+					wait(millis);
+				signaled = false;
+				return true;
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+
+		synchronized void signal() {
+			signaled = true;
+			notify();
+		}
 	}
 
 	/**
@@ -137,7 +900,7 @@ public class BufferMgr {
 	 * @return true if there is a mapping; false otherwise
 	 */
 	public boolean containsMapping(Block blk) {
-		return bufferMgr.containsMapping(blk);
+		return poolFor(blk.fileName()).basic.containsMapping(blk);
 	}
 
 	/**
@@ -147,7 +910,7 @@ public class BufferMgr {
 	 * @return the buffer mapped to if there is a mapping; null otherwise
 	 */
 	public Buffer getMapping(Block blk) {
-		return bufferMgr.getMapping(blk);
+		return poolFor(blk.fileName()).basic.getMapping(blk);
 	}
 
 	/**
@@ -155,7 +918,7 @@ public class BufferMgr {
 	 * 
 	 * @return the bufferPoolMap of Basic Buffer Manager
 	 */
-	public HashMap<Block, Buffer> getBufferPoolMap() {
+	public Map<Block, Buffer> getBufferPoolMap() {
 		return bufferMgr.getBufferPoolMap();
 	}
 
@@ -167,9 +930,10 @@ public class BufferMgr {
 	}
 
 	/**
-	 * Fucntion to reset the buffer for JUnit test cases
+	 * Fucntion to reset the buffer for JUnit test cases makes the replacement
+	 * policy forget the buffers that are no longer in the bufferPoolMap
 	 */
 	public void resetCounter() {
-		BasicBufferMgr.counter = 0;
+		bufferMgr.resetPolicy();
 	}
 }
@@ -0,0 +1,236 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+import simpledb.tx.PinLeakException;
+import simpledb.tx.Transaction;
+
+/**
+ * JUnit test cases for the named buffer pools and the assignment of files
+ * to them
+ * @author Team F
+ *
+ */
+public class BufferPoolUnitTest {
+
+	private BufferMgr myBufferMgr;
+
+	private static String dbname = "studentdb";
+
+	@Before
+	public void setUp() throws Exception {
+		SimpleDB.initFileLogAndBufferMgr(dbname);
+		SimpleDB.bufferMgr().stopReadAhead();
+		myBufferMgr = new BufferMgr(4);
+		myBufferMgr.addPool("keep", 2, new LRUKPolicy(2, 0));
+		myBufferMgr.addPool("recycle", 2, new ClockPolicy());
+	}
+
+	@Test
+	public void poolRoutingTest() {
+		System.out.println("\n\nIn Pool Routing Test...");
+
+		myBufferMgr.assign("cat.*\\.tbl", "keep");
+		/* The first matching rule wins */
+		myBufferMgr.assign("catalog\\.tbl", "recycle");
+		myBufferMgr.assign("temp.*", "recycle");
+
+		assertEquals("keep", myBufferMgr.poolName("catalog.tbl"));
+		assertEquals("keep", myBufferMgr.poolName("cats.tbl"));
+		assertEquals("recycle", myBufferMgr.poolName("temp1"));
+		assertEquals(BufferMgr.DEFAULT_POOL, myBufferMgr.poolName("student.tbl"));
+		/* A rule matches whole file names */
+		assertEquals(BufferMgr.DEFAULT_POOL, myBufferMgr.poolName("bobcat.tbl"));
+
+		/* A pinned block takes a buffer of the pool of its file */
+		Buffer buff = myBufferMgr.pin(new Block("catalog.tbl", 0));
+		assertEquals(1, myBufferMgr.available("catalog.tbl"));
+		assertEquals(2, myBufferMgr.available("temp1"));
+		assertEquals(4, myBufferMgr.available());
+		assertTrue(myBufferMgr.containsMapping(new Block("catalog.tbl", 0)));
+		assertFalse(myBufferMgr.getBufferPoolMap().containsKey(new Block("catalog.tbl", 0)));
+		myBufferMgr.unpin(buff);
+		assertEquals(2, myBufferMgr.available("catalog.tbl"));
+	}
+
+	@Test
+	public void replaceRuleTest() {
+		System.out.println("\n\nIn Replace Rule Test...");
+
+		myBufferMgr.assign("cat.*\\.tbl", "keep");
+		myBufferMgr.assign("catalog\\.tbl", "default");
+		assertEquals("keep", myBufferMgr.poolName("catalog.tbl"));
+
+		/* Assigning a pattern again replaces its rule, which keeps its
+		 place, and the files routed by the old rule follow the new one */
+		myBufferMgr.assign("cat.*\\.tbl", "recycle");
+		assertEquals("recycle", myBufferMgr.poolName("catalog.tbl"));
+		assertEquals("recycle", myBufferMgr.poolName("cats.tbl"));
+		Buffer buff = myBufferMgr.pin(new Block("catalog.tbl", 0));
+		assertEquals(1, myBufferMgr.available("cats.tbl"));
+		assertEquals(4, myBufferMgr.available());
+		myBufferMgr.unpin(buff);
+
+		/* Assigning the same pattern to the same pool changes nothing */
+		myBufferMgr.assign("cat.*\\.tbl", "recycle");
+		assertEquals("recycle", myBufferMgr.poolName("catalog.tbl"));
+	}
+
+	@Test
+	public void invalidPoolTest() {
+		System.out.println("\n\nIn Invalid Pool Test...");
+
+		try {
+			myBufferMgr.assign("x.*", "nosuchpool");
+			fail("a file was assigned to a pool that does not exist");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			myBufferMgr.addPool("keep", 3, new ClockPolicy());
+			fail("a pool was added twice");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			myBufferMgr.addPool("empty", 0, new ClockPolicy());
+			fail("a pool without buffers was added");
+		} catch (IllegalArgumentException e) {
+		}
+		assertFalse(myBufferMgr.hasPool("empty"));
+	}
+
+	/**
+	 * A transaction may pin pinQuota * poolLength buffers of each pool, at
+	 * least one, and the quota follows the size of the pool.
+	 */
+	@Test
+	public void pinQuotaTest() {
+		System.out.println("\n\nIn Pin Quota Test...");
+
+		myBufferMgr.assign("cat.*\\.tbl", "keep");
+		myBufferMgr.setPinQuota(0.5);
+		assertEquals(2, myBufferMgr.pinQuota());
+		assertEquals(2, myBufferMgr.pinQuota("student.tbl"));
+		assertEquals(1, myBufferMgr.pinQuota("catalog.tbl"));
+
+		long aborts = myBufferMgr.aborts();
+		myBufferMgr.checkPinQuota("student.tbl", 1);
+		try {
+			myBufferMgr.checkPinQuota("student.tbl", 2);
+			fail("a transaction pinned more than its quota");
+		} catch (BufferAbortException e) {
+		}
+		try {
+			myBufferMgr.checkPinQuota("catalog.tbl", 1);
+			fail("a transaction pinned more than its quota of the keep pool");
+		} catch (BufferAbortException e) {
+		}
+		assertEquals(aborts + 2, myBufferMgr.aborts());
+
+		myBufferMgr.resize(8);
+		assertEquals(4, myBufferMgr.pinQuota());
+		myBufferMgr.checkPinQuota("student.tbl", 3);
+
+		try {
+			myBufferMgr.setPinQuota(0);
+			fail("a quota of 0 was accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * A transaction aborts when it pins a new block past its quota of
+	 * BUFFER_PIN_QUOTA * poolLength buffers, but may pin again the blocks it
+	 * already pins. A pool that shrinks lowers the quota.
+	 */
+	@Test
+	public void transactionPinQuotaTest() {
+		System.out.println("\n\nIn Transaction Pin Quota Test...");
+
+		BufferMgr bm = SimpleDB.bufferMgr();
+		int quota = bm.pinQuota("filename");
+		assertEquals((int) (SimpleDB.BUFFER_PIN_QUOTA * SimpleDB.BUFFER_SIZE), quota);
+
+		Transaction tx = new Transaction();
+		try {
+			for (int i=0; i<quota; i++)
+				tx.pin(new Block("filename", 11 + i));
+			tx.pin(new Block("filename", 11));
+			try {
+				tx.pin(new Block("filename", 11 + quota));
+				fail("the transaction pinned more than its quota");
+			} catch (BufferAbortException e) {
+			}
+
+			bm.resize(SimpleDB.BUFFER_SIZE / 2);
+			assertTrue(bm.pinQuota("filename") < quota);
+			tx.pin(new Block("filename", 12));
+			try {
+				tx.pin(new Block("filename", 11 + quota));
+				fail("the transaction pinned more than the quota of the smaller pool");
+			} catch (BufferAbortException e) {
+			}
+		} finally {
+			tx.rollback();
+		}
+	}
+
+	/**
+	 * A block that a transaction pins stays counted in the pool it was
+	 * pinned in, even if its file is assigned to another pool meanwhile.
+	 */
+	@Test
+	public void reassignedPinTest() {
+		System.out.println("\n\nIn Reassigned Pin Test...");
+
+		BufferMgr bm = SimpleDB.bufferMgr();
+		bm.addPool("moved", 2, new ClockPolicy());
+		Transaction tx = new Transaction();
+		try {
+			tx.pin(new Block("filename", 11));
+			bm.assign("filename", "moved");
+			tx.unpin(new Block("filename", 11));
+			tx.pin(new Block("filename", 12));
+			assertEquals(1, bm.available("filename"));
+		} finally {
+			tx.rollback();
+		}
+		assertEquals(2, bm.available("filename"));
+	}
+
+	/**
+	 * In debug mode, a transaction that commits while it still pins
+	 * blocks unpins them, and then throws an exception that names them,
+	 * with the place where each was pinned.
+	 */
+	@Test
+	public void pinLeakTest() {
+		System.out.println("\n\nIn Pin Leak Test...");
+
+		BufferMgr bm = SimpleDB.bufferMgr();
+		int available = bm.available();
+		SimpleDB.PIN_LEAK_DEBUG = true;
+		try {
+			Transaction tx = new Transaction();
+			tx.pin(new Block("filename", 11));
+			tx.pin(new Block("filename", 11));
+			tx.pin(new Block("filename", 12));
+			tx.unpin(new Block("filename", 12));
+			try {
+				tx.commit();
+				fail("a pinned block was not reported");
+			} catch (PinLeakException e) {
+				assertTrue(e.getMessage().contains("2 time(s)"));
+				assertFalse(e.getMessage().contains("block 12"));
+				assertEquals(2, e.getSuppressed().length);
+			}
+			assertEquals(available, bm.available());
+		} finally {
+			SimpleDB.PIN_LEAK_DEBUG = false;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package simpledb.buffer;
+
+import simpledb.file.Block;
+
+/**
+ * A small ring of buffers used by a large sequential scan, a sort run or a
+ * materialized temporary table instead of the replacement policy of the
+ * pool. When a block that such a scan pins is not in the pool, the buffer
+ * that the scan used the longest time ago is reused, so that one scan
+ * replaces at most as many buffers as the ring has slots and does not push
+ * the working set of the other transactions out of the pool.
+ *
+ * The buffers of a ring stay in the pool: a block read through a ring can be
+ * pinned by any transaction. A slot is reused only if its buffer still holds
+ * the block that the scan read into it and is unpinned; otherwise the pool
+ * chooses a victim as usual, and the new buffer takes the slot.
+ *
+ * A ring belongs to a single scan, and is not thread-safe.
+ *
+ * @author Team F
+ */
+public class BufferRing {
+	private Buffer[] buffs;
+	private Block[] blocks;
+	private int next = 0;
+
+	/**
+	 * Creates a ring with the specified number of slots.
+	 *
+	 * @param size
+	 *            the number of buffers of the ring
+	 */
+	public BufferRing(int size) {
+		if (size < 1)
+			throw new IllegalArgumentException("ring size must be positive");
+		buffs = new Buffer[size];
+		blocks = new Block[size];
+	}
+
+	/**
+	 * Returns the buffer of the next slot if it can be reused, that is if it
+	 * still holds the block that the scan read into it.
+	 */
+	Buffer candidate() {
+		Buffer buff = buffs[next];
+		if (buff == null || !blocks[next].equals(buff.block()))
+			return null;
+		return buff;
+	}
+
+	/**
+	 * Puts the buffer that the scan just read a block into in the next slot.
+	 */
+	void add(Buffer buff) {
+		buffs[next] = buff;
+		blocks[next] = buff.block();
+		next = (next + 1) % buffs.length;
+	}
+}
@@ -2,8 +2,16 @@ package simpledb.buffer;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.junit.After;
@@ -13,6 +21,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import simpledb.file.Block;
+import simpledb.file.Page;
 import simpledb.server.SimpleDB;
 
 /**
@@ -46,6 +55,9 @@ public class BufferUnitTest {
 		SimpleDB.initFileLogAndBufferMgr(dbname);
 		myBufferMgr = SimpleDB.bufferMgr();
 		
+		/* No read-ahead: the blocks read ahead would take the victims */
+		myBufferMgr.stopReadAhead();
+		
 		/* Initialize 10 blocks for testing from block 11 to 20 */
 		for (int i=0; i<10; i++) {
 			blocksMap.put(i+11,new Block(filename, i+11));
@@ -88,7 +100,7 @@ public class BufferUnitTest {
 		System.out.println("\n\nIn Basic Replacement Test 1...");
 		
 		/* Retrieve the buffer pool map */
-		HashMap<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
+		Map<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
 		
 		Block blk15 = blocksMap.get(15);
 		int blk15_bufId = myBufferMgr.getMapping(blk15).getBufferId();
@@ -118,7 +130,7 @@ public class BufferUnitTest {
 		System.out.println("\n\nIn Basic Replacement Test 2...");
 		
 		/* Retrieve the buffer pool map */
-		HashMap<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
+		Map<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
 		
 		Block blk13 = blocksMap.get(13);
 		int blk13_bufId = myBufferMgr.getMapping(blk13).getBufferId();
@@ -163,7 +175,7 @@ public class BufferUnitTest {
 		System.out.println("\n\nIn LRU2 Replacement Test 1...");
 		
 		/* Retrieve the buffer pool map */
-		HashMap<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
+		Map<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
 		
 		Block blk13 = blocksMap.get(13);
 		int blk13_bufId = myBufferMgr.getMapping(blk13).getBufferId();
@@ -219,7 +231,7 @@ public class BufferUnitTest {
 		System.out.println("\n\nIn LRU2 Replacement Test 2...");
 		
 		/* Retrieve the buffer pool map */
-		HashMap<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
+		Map<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
 		
 		Block blk13 = blocksMap.get(13);
 		int blk13_bufId = myBufferMgr.getMapping(blk13).getBufferId();
@@ -284,7 +296,7 @@ public class BufferUnitTest {
 
 		
 		/* Retrieve the buffer pool map */
-		HashMap<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
+		Map<Block,Buffer> buffPoolMap = myBufferMgr.getBufferPoolMap();
 		
 		Block blk15 = blocksMap.get(15);
 		int blk15_bufId = myBufferMgr.getMapping(blk15).getBufferId();
@@ -326,10 +338,531 @@ public class BufferUnitTest {
 	
 	
 	
+	/**
+	 * Threads pin and unpin overlapping blocks of a small pool without any
+	 * lock of their own. Every pin returns a buffer holding the requested
+	 * block, no block is ever read into two buffers, and every buffer is
+	 * unpinned at the end.
+	 */
+	@Test(timeout=60000)
+	public void concurrentPinTest() throws Exception {
+		System.out.println("\n\nIn Concurrent Pin Test...");
+		
+		final BufferMgr bm = new BufferMgr(8);
+		final Thread[] threads = new Thread[8];
+		final Throwable[] failure = new Throwable[1];
+		for (int t=0; t<threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i=0; i<2000; i++) {
+						Block blk = new Block(filename, 11 + (i * (id + 1)) % 20);
+						Buffer buff = bm.pin(blk);
+						if (!blk.equals(buff.block()))
+							throw new AssertionError("pinned " + buff.block() + " for " + blk);
+						bm.unpin(buff);
+					}
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertNull(failure[0]);
+		
+		assertEquals(8, bm.available());
+		Map<Block,Buffer> map = bm.getBufferPoolMap();
+		assertEquals(map.size(), new HashSet<Buffer>(map.values()).size());
+		for (Map.Entry<Block,Buffer> e : map.entrySet())
+			assertEquals(e.getKey(), e.getValue().block());
+	}
+	
+	/**
+	 * A block that cannot be read loses no buffer: the victim goes back to
+	 * the pool, and its old block can still be pinned.
+	 */
+	@Test(timeout=60000)
+	public void failedReadTest() {
+		System.out.println("\n\nIn Failed Read Test...");
+		
+		BufferMgr bm = new BufferMgr(2);
+		Block bad = new Block("nosuchdir/" + filename, 0);
+		try {
+			bm.pin(bad);
+			fail("a block of a file that cannot be opened was pinned");
+		} catch (RuntimeException e) {
+		}
+		assertEquals(2, bm.available());
+		
+		bm.unpin(bm.pin(blocksMap.get(11)));
+		bm.unpin(bm.pin(blocksMap.get(12)));
+		try {
+			bm.pin(bad);
+			fail("a block of a file that cannot be opened was pinned");
+		} catch (RuntimeException e) {
+		}
+		assertEquals(2, bm.available());
+		assertFalse(bm.containsMapping(bad));
+		
+		Buffer buff11 = bm.pin(blocksMap.get(11));
+		Buffer buff12 = bm.pin(blocksMap.get(12));
+		assertEquals(blocksMap.get(11), buff11.block());
+		assertEquals(blocksMap.get(12), buff12.block());
+		assertEquals(0, bm.available());
+	}
+	
+	/**
+	 * Appends log records that span several log blocks while other threads
+	 * replace dirty buffers, whose log records must be flushed first, and the
+	 * background writer writes them. A thread that holds a miss lock and
+	 * flushes the log must never wait for an appender that needs a miss lock
+	 * to pin the next log block.
+	 */
+	@Test(timeout=60000)
+	public void logAppendDeadlockTest() throws Exception {
+		System.out.println("\n\nIn Log Append Deadlock Test...");
+		
+		for (int i=11; i<=17; i++)
+			myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(i)));
+		myBufferMgr.startWriter(0.0, 0.1, 1);
+		
+		final String filler = String.format("%60s", "deadlock");
+		final Thread[] threads = new Thread[4];
+		final Throwable[] failure = new Throwable[1];
+		for (int t=0; t<threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i=0; i<500; i++) {
+						Buffer buff = myBufferMgr.pin(blocksMap.get(11 + (i + id) % 10));
+						int lsn = SimpleDB.logMgr().append(new Object[] {filler, id, i});
+						buff.setInt(0, i, id, lsn);
+						myBufferMgr.unpin(buff);
+					}
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		myBufferMgr.stopWriter();
+		assertNull(failure[0]);
+	}
+	
+	/**
+	 * A scan that misses consecutive blocks gets the next blocks read ahead,
+	 * and its first pins of those blocks keep the read-ahead going. Pins of
+	 * blocks that were already in the pool are not reported to it.
+	 */
+	@Test(timeout=60000)
+	public void readAheadTest() throws Exception {
+		System.out.println("\n\nIn Read Ahead Test...");
+		
+		String file = "readahead";
+		Page p = new Page();
+		while (SimpleDB.fileMgr().size(file) < 24)
+			p.append(file);
+		BufferMgr bm = new BufferMgr(16);
+		for (int i=0; i<2; i++)
+			bm.unpin(bm.pin(new Block(file, i)));
+		
+		bm.startReadAhead(4, 2);
+		try {
+			/* Blocks 0 and 1 are hits */
+			for (int i=0; i<2; i++)
+				bm.unpin(bm.pin(new Block(file, i)));
+			Thread.sleep(200);
+			assertFalse(bm.containsMapping(new Block(file, 2)));
+			
+			/* The misses on blocks 2 and 3 make the scan sequential */
+			for (int i=2; i<4; i++)
+				bm.unpin(bm.pin(new Block(file, i)));
+			awaitMapping(bm, new Block(file, 7));
+			for (int i=4; i<=7; i++)
+				assertTrue(bm.containsMapping(new Block(file, i)));
+			
+			/* The first pins of the blocks read ahead queue the next ones */
+			for (int i=4; i<7; i++)
+				bm.unpin(bm.pin(new Block(file, i)));
+			awaitMapping(bm, new Block(file, 10));
+		} finally {
+			bm.stopReadAhead();
+		}
+	}
+	
+	private static void awaitMapping(BufferMgr bm, Block blk) throws InterruptedException {
+		while (!bm.containsMapping(blk))
+			Thread.sleep(10);
+	}
+	
+	/**
+	 * A scan through a ring of 2 buffers reads 20 blocks into the same 2
+	 * buffers, and the blocks that were in the pool before stay there.
+	 */
+	@Test
+	public void bufferRingTest() {
+		System.out.println("\n\nIn Buffer Ring Test...");
+		
+		BufferMgr bm = new BufferMgr(8);
+		for (int i=11; i<=16; i++)
+			bm.unpin(bm.pin(blocksMap.get(i)));
+		
+		BufferRing ring = new BufferRing(2);
+		HashSet<Buffer> used = new HashSet<Buffer>();
+		for (int i=100; i<120; i++) {
+			Buffer buff = bm.pin(new Block(filename, i), ring);
+			used.add(buff);
+			bm.unpin(buff);
+		}
+		assertEquals(2, used.size());
+		for (int i=11; i<=16; i++)
+			assertTrue(bm.containsMapping(blocksMap.get(i)));
+		assertTrue(bm.containsMapping(new Block(filename, 119)));
+		assertFalse(bm.containsMapping(new Block(filename, 117)));
+		
+		/* A block of the ring that another transaction pins is not reused */
+		Buffer other = bm.pin(new Block(filename, 118));
+		Buffer buff = bm.pin(new Block(filename, 120), ring);
+		assertNotSame(other, buff);
+		assertEquals(new Block(filename, 118), other.block());
+		bm.unpin(buff);
+		bm.unpin(other);
+		assertEquals(8, bm.available());
+	}
+	
+	/**
+	 * Waiters get the unpinned buffers in the order they came, while a block
+	 * that is already in the pool, or the next block of the log, is pinned at
+	 * once without joining the queue.
+	 */
+	@Test(timeout=60000)
+	public void fifoWaitersTest() throws Exception {
+		System.out.println("\n\nIn FIFO Waiters Test...");
+		
+		/* Every buffer of the pool is pinned by setUp */
+		assertEquals(0, myBufferMgr.available());
+		final Block[] got = new Block[2];
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		Thread[] threads = new Thread[2];
+		for (int t=0; t<2; t++) {
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				Buffer buff = myBufferMgr.pin(blocksMap.get(19 + id));
+				order.add(id);
+				got[id] = buff.block();
+			});
+			long waits = myBufferMgr.waits();
+			threads[t].start();
+			while (myBufferMgr.waits() == waits)
+				Thread.sleep(10);
+		}
+		
+		long start = System.currentTimeMillis();
+		Buffer buff11 = myBufferMgr.pin(blocksMap.get(11));
+		assertEquals(blocksMap.get(11), buff11.block());
+		String filler = String.format("%60s", "fifo");
+		int lsn = SimpleDB.logMgr().append(new Object[] {filler});
+		int lastLsn = lsn;
+		while (lastLsn < lsn + 2)
+			lastLsn = SimpleDB.logMgr().append(new Object[] {filler});
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(order.isEmpty());
+		
+		myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(12)));
+		threads[0].join();
+		myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(13)));
+		threads[1].join();
+		assertEquals(Arrays.asList(0, 1), order);
+		assertEquals(blocksMap.get(19), got[0]);
+		assertEquals(blocksMap.get(20), got[1]);
+		myBufferMgr.unpin(buff11);
+	}
+	
+	/**
+	 * Flushing the buffers of a transaction writes the blocks it modified,
+	 * and leaves the buffers modified by other transactions dirty.
+	 */
+	@Test
+	public void flushAllTest() {
+		System.out.println("\n\nIn Flush All Test...");
+		
+		Buffer buff11 = myBufferMgr.getMapping(blocksMap.get(11));
+		Buffer buff12 = myBufferMgr.getMapping(blocksMap.get(12));
+		Buffer buff13 = myBufferMgr.getMapping(blocksMap.get(13));
+		int value = (int) System.currentTimeMillis();
+		buff11.setInt(0, value, 100, -1);
+		buff12.setInt(0, value + 1, 200, -1);
+		buff13.setInt(0, value + 2, 100, -1);
+		
+		myBufferMgr.flushAll(100);
+		assertFalse(buff11.isModifiedBy(100));
+		assertFalse(buff13.isModifiedBy(100));
+		assertTrue(buff12.isModifiedBy(200));
+		Page p = new Page();
+		p.read(blocksMap.get(11));
+		assertEquals(value, p.getInt(0));
+		p.read(blocksMap.get(13));
+		assertEquals(value + 2, p.getInt(0));
+		
+		myBufferMgr.flushAll(200);
+		assertFalse(buff12.isModifiedBy(200));
+		p.read(blocksMap.get(12));
+		assertEquals(value + 1, p.getInt(0));
+	}
+	
+	/**
+	 * The hot set lists the pinned blocks first, then the unpinned ones
+	 * from the last victim to the next one, and a pool that warms up from it
+	 * reads its hottest half.
+	 */
+	@Test(timeout=60000)
+	public void hotSetTest() throws Exception {
+		System.out.println("\n\nIn Hot Set Test...");
+		
+		BufferMgr bm = new BufferMgr(8);
+		Buffer[] buffs = new Buffer[4];
+		for (int i=0; i<4; i++)
+			buffs[i] = bm.pin(blocksMap.get(11 + i));
+		for (int i=0; i<3; i++)
+			bm.unpin(buffs[i]);
+		
+		File file = File.createTempFile("buffer", ".hot");
+		try {
+			bm.startHotSet(file, 60000);
+			bm.stopHotSet();
+			assertEquals(Arrays.asList(blocksMap.get(14), blocksMap.get(13), blocksMap.get(12), blocksMap.get(11)),
+					HotSet.load(file, 8));
+			assertEquals(2, HotSet.load(file, 2).size());
+			
+			BufferMgr warm = new BufferMgr(4);
+			warm.startReadAhead(8, 2);
+			try {
+				assertEquals(2, warm.warmUp(file));
+				awaitMapping(warm, blocksMap.get(14));
+				awaitMapping(warm, blocksMap.get(13));
+				assertFalse(warm.containsMapping(blocksMap.get(11)));
+			} finally {
+				warm.stopReadAhead();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Shrinks the pool while its buffers are pinned, then grows it again,
+	 * through the setting of the server. The pinned buffers in excess are
+	 * dropped when they are unpinned, and the new buffers of a larger pool
+	 * can be pinned at once.
+	 */
+	@Test
+	public void resizeTest() {
+		System.out.println("\n\nIn Resize Test...");
+		
+		myBufferMgr.stopReadAhead();
+		try {
+			SimpleDB.resizeBufferPool(4);
+			assertEquals(4, myBufferMgr.size());
+			assertEquals(0, myBufferMgr.available());
+			
+			for (int i=11; i<=17; i++)
+				myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(i)));
+			/* One buffer stays pinned by the log manager */
+			assertEquals(3, myBufferMgr.available());
+			int mapped = 0;
+			for (int i=11; i<=17; i++)
+				if (myBufferMgr.containsMapping(blocksMap.get(i)))
+					mapped++;
+			assertTrue(mapped <= 3);
+			
+			SimpleDB.resizeBufferPool(10);
+			assertEquals(10, SimpleDB.BUFFER_SIZE);
+			assertEquals(9, myBufferMgr.available());
+			for (int i=11; i<=19; i++)
+				myBufferMgr.pin(blocksMap.get(i));
+			assertEquals(0, myBufferMgr.available());
+		} finally {
+			SimpleDB.BUFFER_SIZE = 8;
+		}
+	}
+	
+	/**
+	 * Resizes the pool while dirty buffers are retired by concurrent shrinks,
+	 * and checks that, once the pool is back to its size, the available count
+	 * is what it was. A frame being retired must not take a slot that a
+	 * concurrent resize counted as free.
+	 */
+	@Test
+	public void resizeAccountingTest() throws Exception {
+		System.out.println("\n\nIn Resize Accounting Test...");
+		
+		for (int i=11; i<=17; i++)
+			myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(i)));
+		final int size = myBufferMgr.size();
+		final int available = myBufferMgr.available();
+		
+		final Thread[] threads = new Thread[4];
+		final Throwable[] failure = new Throwable[1];
+		for (int t=0; t<threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i=0; i<1000; i++) {
+						if (id % 2 == 0)
+							myBufferMgr.resize(3 + (i + id) % 8);
+						else {
+							Buffer buff = myBufferMgr.pin(blocksMap.get(11 + (i + id) % 10));
+							buff.setInt(0, i, id, -1);
+							myBufferMgr.unpin(buff);
+						}
+					}
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertNull(failure[0]);
+		
+		myBufferMgr.resize(size);
+		assertEquals(size, myBufferMgr.size());
+		assertEquals(available, myBufferMgr.available());
+	}
+	
+	/**
+	 * A reader of a buffer waits while another thread holds the page latched
+	 * exclusive, and readers share the latch while a modification waits for
+	 * them.
+	 */
+	@Test
+	public void pageLatchTest() throws Exception {
+		System.out.println("\n\nIn Page Latch Test...");
+		
+		final Buffer buff = myBufferMgr.getMapping(blocksMap.get(11));
+		final int[] read = new int[1];
+		
+		buff.latchExclusive();
+		buff.setInt(0, 42, 1, -1);
+		Thread reader = new Thread(() -> read[0] = buff.getInt(0));
+		reader.start();
+		reader.join(200);
+		assertTrue(reader.isAlive());
+		buff.setInt(0, 43, 1, -1);
+		buff.unlatchExclusive();
+		reader.join(5000);
+		assertFalse(reader.isAlive());
+		assertEquals(43, read[0]);
+		
+		buff.latchShared();
+		reader = new Thread(() -> read[0] = buff.getInt(0) + 1);
+		reader.start();
+		reader.join(5000);
+		assertFalse(reader.isAlive());
+		assertEquals(44, read[0]);
+		Thread writer = new Thread(() -> buff.setInt(0, 45, 1, -1));
+		writer.start();
+		writer.join(200);
+		assertTrue(writer.isAlive());
+		assertEquals(43, buff.getInt(0));
+		buff.unlatchShared();
+		writer.join(5000);
+		assertFalse(writer.isAlive());
+		assertEquals(45, buff.getInt(0));
+	}
+	
+	/**
+	 * A flush of a transaction returns the files of the blocks it modified,
+	 * including those that another thread wrote before the commit, so that
+	 * the commit forces those files and no others.
+	 */
+	@Test
+	public void flushedFilesTest() {
+		System.out.println("\n\nIn Flushed Files Test...");
+		
+		Buffer buff11 = myBufferMgr.getMapping(blocksMap.get(11));
+		Buffer buff12 = myBufferMgr.getMapping(blocksMap.get(12));
+		myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(17)));
+		Buffer other = myBufferMgr.pin(new Block("otherfile", 0));
+		buff11.setInt(0, 1, 300, -1);
+		other.setInt(0, 2, 300, -1);
+		buff12.setInt(0, 3, 400, -1);
+		/* the page of the other file is written early, by another thread */
+		other.flush();
+		
+		Set<String> files = myBufferMgr.flushAll(300);
+		assertEquals(new HashSet<String>(Arrays.asList(filename, "otherfile")), files);
+		assertTrue(myBufferMgr.flushAll(300).isEmpty());
+		assertEquals(Collections.singleton(filename), myBufferMgr.flushAll(400));
+		myBufferMgr.unpin(other);
+	}
+	
+	/**
+	 * A range of blocks is pinned all or nothing, and its buffers come back
+	 * in block order.
+	 */
+	@Test
+	public void pinRangeTest() {
+		System.out.println("\n\nIn Pin Range Test...");
+		
+		int available = myBufferMgr.available();
+		myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(16)));
+		myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(17)));
+		int free = myBufferMgr.available();
+		assertEquals(available + 2, free);
+		
+		/* one block more than there are free buffers: nothing is pinned */
+		BasicBufferMgr basic = myBufferMgr.getMapping(blocksMap.get(11)).pool();
+		assertNull(basic.pinRange(filename, 30, 30 + free));
+		assertEquals(free, myBufferMgr.available());
+		assertNull(myBufferMgr.getMapping(new Block(filename, 30)));
+		
+		Buffer[] buffs = myBufferMgr.pinRange(filename, 30, 31);
+		assertEquals(2, buffs.length);
+		for (int i = 0; i < buffs.length; i++) {
+			assertEquals(new Block(filename, 30 + i), buffs[i].block());
+			assertTrue(buffs[i].isPinned());
+		}
+		assertEquals(free - 2, myBufferMgr.available());
+		for (Buffer buff : buffs)
+			myBufferMgr.unpin(buff);
+	}
+	
+	/**
+	 * Flushing a file writes its dirty pages, adjacent ones in a single run,
+	 * and leaves the pages of other files dirty.
+	 */
+	@Test
+	public void flushFileTest() {
+		System.out.println("\n\nIn Flush File Test...");
+		
+		myBufferMgr.unpin(myBufferMgr.getMapping(blocksMap.get(17)));
+		Buffer other = myBufferMgr.pin(new Block("otherfile", 0));
+		for (int i = 11; i <= 14; i++)
+			myBufferMgr.getMapping(blocksMap.get(i)).setInt(0, 1000 + i, 500, -1);
+		myBufferMgr.getMapping(blocksMap.get(16)).setInt(0, 1016, 500, -1);
+		other.setInt(0, 2000, 500, -1);
+		
+		myBufferMgr.flushFile(filename);
+		for (int i : new int[] {11, 12, 13, 14, 16}) {
+			assertFalse(myBufferMgr.getMapping(blocksMap.get(i)).isDirty());
+			Page p = new Page();
+			p.read(blocksMap.get(i));
+			assertEquals(1000 + i, p.getInt(0));
+		}
+		assertTrue(other.isDirty());
+		myBufferMgr.unpin(other);
+	}
+	
 	private static void dumpBufferPool(BufferMgr buffMgr) {
 		
 		/* Retrieve the buffer pool map */
-		HashMap<Block,Buffer> buffPoolMap = buffMgr.getBufferPoolMap();
+		Map<Block,Buffer> buffPoolMap = buffMgr.getBufferPoolMap();
 		
 		/* Sort the buffer pool map based on buffer ID */
 		TreeSet<Buffer> sortedBufferPool = new TreeSet<>(new Comparator<Buffer>() {
@@ -344,9 +877,7 @@ public class BufferUnitTest {
 		}
 		
 		for(Buffer b: sortedBufferPool) {
-			double l = b.getlastPin();
-			double s = b.getSecondLastPin();
-			System.out.println("[ Buffer "+b.getBufferId()+" ] : Block "+b.block()+" [l="+l+", s="+s+"] Pinned="+b.isPinned());
+			System.out.println("[ Buffer "+b.getBufferId()+" ] : Block "+b.block()+" "+b.policyState()+" Pinned="+b.isPinned());
 		}
 	}
 	
@@ -355,7 +886,7 @@ public class BufferUnitTest {
 	 */
 	private static HashMap<Integer,Block> getMap(BufferMgr buffMgr) {
 		/* Retrieve the buffer pool map */
-		HashMap<Block,Buffer> buffPoolMap = buffMgr.getBufferPoolMap();
+		Map<Block,Buffer> buffPoolMap = buffMgr.getBufferPoolMap();
 		
 		HashMap<Integer,Block> result = new HashMap<>();
 		
@@ -0,0 +1,93 @@
+package simpledb.buffer;
+
+/**
+ * The background writer of a buffer pool. The writer wakes up periodically,
+ * and whenever a transaction had to write a dirty victim itself. If more
+ * buffers of the pool are dirty than the high target, it writes unpinned
+ * dirty buffers until at most the low target are dirty, so that the victims
+ * chosen by the replacement policy are usually clean. The targets are
+ * fractions of the pool, so that they follow its size when it is resized.
+ *
+ * The writer is a daemon thread; it is started and stopped through
+ * {@link BufferMgr#startWriter(double, double, long)} and
+ * {@link BufferMgr#stopWriter()}.
+ *
+ * @author Team F
+ */
+class BufferWriter extends Thread {
+	private BasicBufferMgr pool;
+	private double lowRatio, highRatio;
+	private long interval;
+	private volatile boolean stopped = false;
+	private boolean signaled = false;
+
+	/**
+	 * Creates a writer for the specified pool.
+	 *
+	 * @param pool
+	 *            the buffer pool
+	 * @param lowRatio
+	 *            the fraction of dirty buffers that the writer stops at
+	 * @param highRatio
+	 *            the fraction of dirty buffers above which the writer starts
+	 * @param interval
+	 *            the time between two rounds, in milliseconds
+	 */
+	BufferWriter(BasicBufferMgr pool, double lowRatio, double highRatio, long interval) {
+		super("simpledb-buffer-writer");
+		this.pool = pool;
+		this.lowRatio = lowRatio;
+		this.highRatio = highRatio;
+		this.interval = interval;
+		setDaemon(true);
+	}
+
+	public void run() {
+		while (!stopped) {
+			try {
+				synchronized (this) {
+					if (!signaled)
+						wait(interval);
+					signaled = false;
+				}
+			} catch (InterruptedException e) {
+				// nobody interrupts the writer, see shutdown()
+			}
+			if (stopped)
+				break;
+			try {
+				int numbuffs = pool.poolLength();
+				if (pool.dirtyCount() > (int) (highRatio * numbuffs))
+					pool.writeDirtyBuffers((int) (lowRatio * numbuffs));
+			} catch (RuntimeException e) {
+				// the block is written again when its buffer is replaced, and
+				// the error is then reported to the transaction
+			}
+		}
+	}
+
+	/**
+	 * Starts a round immediately.
+	 */
+	synchronized void wakeUp() {
+		signaled = true;
+		notify();
+	}
+
+	/**
+	 * Stops the writer and waits for the current round to end. The writer is
+	 * woken up rather than interrupted: an interrupt during a write would
+	 * close the channel of the file, which is shared by all the threads.
+	 */
+	void shutdown() {
+		stopped = true;
+		synchronized (this) {
+			notify();
+		}
+		try {
+			join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
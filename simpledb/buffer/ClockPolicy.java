@@ -0,0 +1,127 @@
+package simpledb.buffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CLOCK (second chance) replacement policy. The buffers form a ring that is
+ * swept by a clock hand. Each buffer has a reference bit that is set when the
+ * buffer is pinned. The hand clears the bit of every unpinned buffer it passes
+ * and stops at the first unpinned buffer whose bit is already clear.
+ * A buffer knows its slot in the ring, so that it can be taken out without
+ * searching; the empty slots are reused by the next buffers admitted.
+ *
+ * @author Team F
+ */
+public class ClockPolicy implements ReplacementPolicy {
+	private List<Buffer> ring = new ArrayList<Buffer>();
+	private ArrayDeque<Integer> freeSlots = new ArrayDeque<Integer>();
+	private int hand = 0;
+
+	/**
+	 * Adds a buffer to the ring the first time it is assigned to a block.
+	 */
+	public void admit(Buffer buff) {
+		RefBit bit = (RefBit) buff.policyState();
+		if (bit == null) {
+			bit = new RefBit();
+			buff.setPolicyState(bit);
+			Integer slot = freeSlots.poll();
+			if (slot == null) {
+				bit.slot = ring.size();
+				ring.add(buff);
+			} else {
+				bit.slot = slot;
+				ring.set(slot, buff);
+			}
+		}
+		bit.referenced = false;
+	}
+
+	/**
+	 * Sets the reference bit of the buffer.
+	 */
+	public void pin(Buffer buff) {
+		((RefBit) buff.policyState()).referenced = true;
+	}
+
+	/**
+	 * Nothing to do: the hand skips pinned buffers.
+	 */
+	public void unpin(Buffer buff) {
+	}
+
+	/**
+	 * Sweeps the ring at most twice looking for an unpinned buffer with a
+	 * clear reference bit, skipping the empty slots.
+	 */
+	public Buffer evict() {
+		int n = ring.size();
+		for (int i = 0; i < 2 * n; i++) {
+			Buffer buff = ring.get(hand);
+			hand = (hand + 1) % n;
+			if (buff == null || buff.isPinned())
+				continue;
+			RefBit bit = (RefBit) buff.policyState();
+			if (bit.referenced)
+				bit.referenced = false;
+			else if (buff.claim())
+				return buff;
+		}
+		return null;
+	}
+
+	/**
+	 * Takes the buffer out of the ring by clearing its slot; it is put back
+	 * when it is admitted again.
+	 */
+	public void remove(Buffer buff) {
+		RefBit bit = (RefBit) buff.policyState();
+		if (bit != null) {
+			ring.set(bit.slot, null);
+			freeSlots.push(bit.slot);
+		}
+		buff.setPolicyState(null);
+	}
+
+	/**
+	 * Nothing to do: the ring holds the buffers that the pool has, and
+	 * loses the dropped ones through {@link #remove(Buffer) remove}.
+	 */
+	public void resize(int numbuffs) {
+	}
+
+	/**
+	 * Returns the unpinned buffers from the hand onwards, those whose
+	 * reference bit is clear first.
+	 */
+	public List<Buffer> victimOrder() {
+		List<Buffer> clear = new ArrayList<Buffer>();
+		List<Buffer> referenced = new ArrayList<Buffer>();
+		int n = ring.size();
+		for (int i = 0; i < n; i++) {
+			Buffer buff = ring.get((hand + i) % n);
+			if (buff == null || buff.isPinned() || buff.block() == null)
+				continue;
+			if (((RefBit) buff.policyState()).referenced)
+				referenced.add(buff);
+			else
+				clear.add(buff);
+		}
+		clear.addAll(referenced);
+		return clear;
+	}
+
+	/**
+	 * The reference bit of a buffer.
+	 */
+	private static class RefBit {
+		volatile boolean referenced;
+		int slot;
+
+		public String toString() {
+			return "[ref=" + referenced + ", slot=" + slot + "]";
+		}
+	}
+}
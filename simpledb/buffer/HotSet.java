@@ -0,0 +1,138 @@
+package simpledb.buffer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.file.Block;
+
+/**
+ * The hot set of a buffer pool: the blocks resident in the pool, hottest
+ * first. A daemon thread periodically saves the hot set to a small file in
+ * the database directory, and once more when it is stopped. When the
+ * database is opened again, the pool reloads the hottest blocks of the file
+ * in the background, so that it does not start cold.
+ *
+ * The file holds one block per line, as its file name and its number
+ * separated by a space. It is written to a temporary file that then replaces
+ * the old one, so that a crash never leaves a partial hot set behind.
+ *
+ * The saver is started and stopped through
+ * {@link BufferMgr#startHotSet(File, long)} and
+ * {@link BufferMgr#stopHotSet()}.
+ *
+ * @author Team F
+ */
+class HotSet extends Thread {
+	private BasicBufferMgr pool;
+	private File file;
+	private long interval;
+	private volatile boolean stopped = false;
+
+	/**
+	 * Creates a saver for the hot set of the specified pool.
+	 *
+	 * @param pool
+	 *            the buffer pool
+	 * @param file
+	 *            the file that holds the hot set
+	 * @param interval
+	 *            the time between two saves, in milliseconds
+	 */
+	HotSet(BasicBufferMgr pool, File file, long interval) {
+		super("simpledb-hot-set");
+		this.pool = pool;
+		this.file = file;
+		this.interval = interval;
+		setDaemon(true);
+	}
+
+	public void run() {
+		while (!stopped) {
+			try {
+				synchronized (this) {
+					wait(interval);
+				}
+			} catch (InterruptedException e) {
+				// shutdown() interrupts the saver
+			}
+			if (stopped)
+				break;
+			save(pool.hotSet(), file);
+		}
+	}
+
+	/**
+	 * Stops the saver, and saves the hot set one last time.
+	 */
+	void shutdown() {
+		stopped = true;
+		interrupt();
+		try {
+			join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		save(pool.hotSet(), file);
+	}
+
+	/**
+	 * Writes the specified blocks to the file. Errors are ignored: the hot set
+	 * is only a hint, and the previous file stays in place.
+	 */
+	static void save(List<Block> blocks, File file) {
+		File tmp = new File(file.getPath() + ".new");
+		try {
+			PrintWriter out = new PrintWriter(new FileWriter(tmp));
+			try {
+				for (Block blk : blocks)
+					out.println(blk.fileName() + " " + blk.number());
+			} finally {
+				out.close();
+			}
+			if (out.checkError() || (file.exists() && !file.delete()) || !tmp.renameTo(file))
+				tmp.delete();
+		} catch (IOException e) {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Reads at most the specified number of blocks from the file, hottest
+	 * first. Returns an empty list if there is no hot set; malformed lines
+	 * are skipped.
+	 */
+	static List<Block> load(File file, int max) {
+		List<Block> blocks = new ArrayList<Block>();
+		if (!file.exists())
+			return blocks;
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while (blocks.size() < max && (line = in.readLine()) != null) {
+					int sep = line.lastIndexOf(' ');
+					if (sep <= 0)
+						continue;
+					try {
+						int blknum = Integer.parseInt(line.substring(sep + 1));
+						if (blknum >= 0)
+							blocks.add(new Block(line.substring(0, sep), blknum));
+					} catch (NumberFormatException e) {
+						// skip the line
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// a hot set that cannot be read is ignored
+		}
+		return blocks;
+	}
+}
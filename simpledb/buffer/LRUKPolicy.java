@@ -0,0 +1,195 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU-K replacement policy (O'Neil, O'Neil and Weikum). The victim is the
+ * unpinned buffer whose K-th most recent reference is the oldest. Buffers that
+ * have been referenced fewer than K times have an infinite backward
+ * K-distance and are replaced first, least recently used first.
+ *
+ * References that happen within the correlated reference period of the
+ * previous reference of the buffer are treated as a single reference. Time is
+ * measured in pins: the clock of the policy advances by one on every pin. With
+ * K = 2 and a correlated reference period of 0 this is the LRU(2) policy that
+ * the buffer pool used originally.
+ *
+ * The unpinned buffers are kept in a TreeSet of immutable entries, so a victim
+ * is found in O(log n).
+ *
+ * @author Team F
+ */
+public class LRUKPolicy implements ReplacementPolicy {
+	private int k;
+	private long correlatedPeriod;
+	private AtomicLong clock = new AtomicLong(0);
+	private TreeSet<Entry> candidates = new TreeSet<Entry>();
+
+	/**
+	 * Creates an LRU-K policy.
+	 *
+	 * @param k
+	 *            the number of references remembered for each buffer
+	 * @param correlatedPeriod
+	 *            the number of pins after a reference during which further
+	 *            references to the same buffer are considered correlated
+	 */
+	public LRUKPolicy(int k, long correlatedPeriod) {
+		if (k < 1)
+			throw new IllegalArgumentException("K must be positive");
+		this.k = k;
+		this.correlatedPeriod = correlatedPeriod;
+	}
+
+	/**
+	 * Starts a new reference history for the buffer.
+	 */
+	public void admit(Buffer buff) {
+		buff.setPolicyState(new History(k));
+	}
+
+	/**
+	 * Records a reference in the history of the buffer.
+	 */
+	public void pin(Buffer buff) {
+		History h = (History) buff.policyState();
+		synchronized (h) {
+			boolean correlated = h.last != 0 && inCorrelatedPeriod(h.last);
+			long now = clock.incrementAndGet();
+			if (!correlated) {
+				long correlation = h.last - h.times[0];
+				for (int i = k - 1; i > 0; i--)
+					h.times[i] = (h.times[i - 1] == 0) ? 0 : h.times[i - 1] + correlation;
+				h.times[0] = now;
+			}
+			h.last = now;
+		}
+	}
+
+	/**
+	 * Indexes the buffer by its current history.
+	 */
+	public void unpin(Buffer buff) {
+		History h = (History) buff.policyState();
+		if (h.entry != null)
+			candidates.remove(h.entry);
+		synchronized (h) {
+			h.entry = new Entry(buff, h.times[k - 1], h.times[0], h.last);
+		}
+		candidates.add(h.entry);
+	}
+
+	/**
+	 * Returns the first indexed buffer that is still unpinned and is outside
+	 * its correlated reference period. If every candidate is inside that
+	 * period, the first one that can be claimed is returned anyway.
+	 */
+	public Buffer evict() {
+		boolean fallback = false;
+		while (true) {
+			Iterator<Entry> iter = candidates.iterator();
+			while (iter.hasNext()) {
+				Entry e = iter.next();
+				History h = (History) e.buff.policyState();
+				if (e.buff.isPinned() || h == null || h.entry != e) {
+					// the buffer was pinned again; it is re-indexed when unpinned
+					iter.remove();
+					continue;
+				}
+				if ((fallback || !inCorrelatedPeriod(e.last)) && e.buff.claim()) {
+					iter.remove();
+					e.buff.setPolicyState(null);
+					return e.buff;
+				}
+			}
+			if (fallback || candidates.isEmpty())
+				return null;
+			fallback = true;
+		}
+	}
+
+	/**
+	 * Drops the buffer from the index.
+	 */
+	public void remove(Buffer buff) {
+		History h = (History) buff.policyState();
+		if (h != null && h.entry != null)
+			candidates.remove(h.entry);
+		buff.setPolicyState(null);
+	}
+
+	/**
+	 * Returns the indexed buffers that are still unpinned, by increasing
+	 * backward K-distance.
+	 */
+	public List<Buffer> victimOrder() {
+		List<Buffer> order = new ArrayList<Buffer>();
+		for (Entry e : candidates) {
+			History h = (History) e.buff.policyState();
+			if (!e.buff.isPinned() && h != null && h.entry == e)
+				order.add(e.buff);
+		}
+		return order;
+	}
+
+	/**
+	 * Nothing to do: the policy does not depend on the size of the pool.
+	 */
+	public void resize(int numbuffs) {
+	}
+
+	/**
+	 * Returns true if fewer than correlatedPeriod pins happened since the
+	 * specified reference time.
+	 */
+	private boolean inCorrelatedPeriod(long last) {
+		return clock.get() - last < correlatedPeriod;
+	}
+
+	/**
+	 * The times of the last K uncorrelated references of a buffer, most
+	 * recent first, plus the time of its last reference. A time of 0 means
+	 * that there was no such reference.
+	 */
+	private static class History {
+		long[] times;
+		long last = 0;
+		Entry entry;
+
+		History(int k) {
+			times = new long[k];
+		}
+
+		public String toString() {
+			return "[last=" + last + ", K-th=" + times[times.length - 1] + "]";
+		}
+	}
+
+	/**
+	 * A snapshot of the history of an unpinned buffer, ordered by backward
+	 * K-distance, then by most recent reference, then by buffer ID.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final Buffer buff;
+		final long kth, first, last;
+
+		Entry(Buffer buff, long kth, long first, long last) {
+			this.buff = buff;
+			this.kth = kth;
+			this.first = first;
+			this.last = last;
+		}
+
+		public int compareTo(Entry e) {
+			if (kth != e.kth)
+				return (kth < e.kth) ? -1 : 1;
+			if (first != e.first)
+				return (first < e.first) ? -1 : 1;
+			return buff.getBufferId() - e.buff.getBufferId();
+		}
+	}
+}
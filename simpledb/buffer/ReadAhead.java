@@ -0,0 +1,188 @@
+package simpledb.buffer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import simpledb.file.Block;
+import simpledb.file.FileIds;
+import simpledb.server.SimpleDB;
+
+/**
+ * Sequential read-ahead for a buffer pool. The pool reports each miss, and
+ * the first pin of each block that was read ahead, to
+ * {@link #access(Block) access}; pins of other blocks already in the pool
+ * are not reported. When a file is being read block after block, the next
+ * blocks of the file are queued, and a daemon thread reads them into free
+ * buffers of the pool before they are requested.
+ * Scans that know which blocks they will read, such as
+ * {@link simpledb.multibuffer.ChunkScan}, can also queue a range of blocks
+ * directly. Adjacent queued blocks are read with one vectored read.
+ *
+ * The read-ahead is started and stopped through
+ * {@link BufferMgr#startReadAhead(int, int)} and
+ * {@link BufferMgr#stopReadAhead()}.
+ *
+ * @author Team F
+ */
+class ReadAhead extends Thread {
+	private static final int MAX_STREAMS = 64;
+	private static final int MAX_RUN = 32;
+	private static final Block STOP = new Block("", -1);
+
+	private BasicBufferMgr pool;
+	private int depth, trigger;
+	private ConcurrentHashMap<String, Stream> streams = new ConcurrentHashMap<String, Stream>();
+	private LinkedBlockingQueue<Block> requests = new LinkedBlockingQueue<Block>();
+
+	/**
+	 * Creates a read-ahead for the specified pool.
+	 *
+	 * @param pool
+	 *            the buffer pool
+	 * @param depth
+	 *            the number of blocks read ahead of a sequential scan
+	 * @param trigger
+	 *            the number of consecutive blocks that make a scan sequential
+	 */
+	ReadAhead(BasicBufferMgr pool, int depth, int trigger) {
+		super("simpledb-read-ahead");
+		this.pool = pool;
+		this.depth = depth;
+		this.trigger = trigger;
+		setDaemon(true);
+	}
+
+	/**
+	 * Notes that the specified block was missed, or pinned for the first time
+	 * after it was read ahead. Once trigger consecutive blocks of a file have
+	 * been reported, the next depth blocks are queued, and more blocks are
+	 * queued each time the scan has used up half of them.
+	 */
+	void access(Block blk) {
+		String filename = blk.fileName();
+		Stream s = streams.get(filename);
+		if (s == null) {
+			if (streams.size() >= MAX_STREAMS)
+				streams.clear();
+			streams.putIfAbsent(filename, new Stream());
+			s = streams.get(filename);
+		}
+		int start, end;
+		synchronized (s) {
+			int n = blk.number();
+			if (n == s.last)
+				return;
+			if (n == s.last + 1)
+				s.run++;
+			else {
+				s.run = 1;
+				s.next = n + 1;
+			}
+			s.last = n;
+			if (s.run < trigger || s.next > n + depth / 2)
+				return;
+			start = Math.max(s.next, n + 1);
+			end = n + depth;
+			s.next = end + 1;
+		}
+		request(filename, start, end);
+	}
+
+	/**
+	 * Queues the specified blocks of a file to be read. Blocks past the end
+	 * of the file are ignored.
+	 *
+	 * @param filename
+	 *            the name of the file
+	 * @param startbnum
+	 *            the first block to read
+	 * @param endbnum
+	 *            the last block to read
+	 */
+	void request(String filename, int startbnum, int endbnum) {
+		int fileid = FileIds.id(filename);
+		for (int i = startbnum; i <= endbnum; i++)
+			requests.add(new Block(fileid, i));
+	}
+
+	/**
+	 * Forgets the specified file, which is about to be deleted: its stream is
+	 * dropped, and so are its queued blocks.
+	 *
+	 * @param filename
+	 *            the name of the file
+	 */
+	void forget(String filename) {
+		streams.remove(filename);
+		int fileid = FileIds.id(filename);
+		requests.removeIf(blk -> blk != STOP && blk.fileId() == fileid);
+	}
+
+	public void run() {
+		String filename = null;
+		int filesize = 0;
+		while (true) {
+			Block blk;
+			try {
+				blk = requests.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (blk == STOP)
+				return;
+			int last = blk.number();
+			Block next = requests.peek();
+			while (next != null && next != STOP && next.fileId() == blk.fileId() && next.number() == last + 1
+					&& last - blk.number() + 1 < MAX_RUN) {
+				// the queue has a single consumer, so the peeked block is
+				// still at its head, unless a shutdown cleared the queue
+				Block polled = requests.poll();
+				if (polled != next) {
+					if (polled == STOP)
+						requests.add(STOP);
+					break;
+				}
+				last++;
+				next = requests.peek();
+			}
+			try {
+				if (!blk.fileName().equals(filename) || last >= filesize) {
+					filename = blk.fileName();
+					filesize = SimpleDB.fileMgr().size(filename);
+				}
+				last = Math.min(last, filesize - 1);
+				if (blk.number() == last)
+					pool.prefetch(blk);
+				else if (blk.number() < last)
+					pool.prefetchRange(filename, blk.number(), last);
+			} catch (RuntimeException e) {
+				// the block is read again when it is pinned, and the error is
+				// then reported to the transaction
+			}
+		}
+	}
+
+	/**
+	 * Stops the read-ahead, dropping the queued blocks, and waits for the
+	 * current read to end.
+	 */
+	void shutdown() {
+		requests.clear();
+		requests.add(STOP);
+		try {
+			join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The last block of a file that was pinned, the number of consecutive
+	 * blocks pinned up to it, and the first block that has not been queued.
+	 */
+	private static class Stream {
+		int last = -2;
+		int run = 0;
+		int next = 0;
+	}
+}
@@ -0,0 +1,95 @@
+package simpledb.buffer;
+
+import java.util.List;
+
+/**
+ * A buffer replacement policy. The buffer pool reports every change in the
+ * status of its buffers to the policy, and asks the policy for a victim when a
+ * block has to be read into a buffer that is already in use.
+ *
+ * The callbacks are meant to be O(1) bookkeeping (O(log n) at worst). The
+ * policy keeps whatever per-buffer information it needs in
+ * {@link Buffer#policyState()}. Methods {@link #admit(Buffer) admit},
+ * {@link #unpin(Buffer) unpin} and {@link #evict() evict} are called while
+ * the pool is locked, and are the only ones that may change the shared
+ * structures of the policy. Method {@link #pin(Buffer) pin} is called without
+ * any lock when a block is found in the pool, possibly by several threads for
+ * the same buffer at once; it must only update the per-buffer information,
+ * in a thread-safe way.
+ *
+ * The policy is chosen by {@link simpledb.server.SimpleDB#init(String)}; see
+ * {@link simpledb.server.SimpleDB#replacementPolicy(String, int)}.
+ *
+ * @author Team F
+ */
+public interface ReplacementPolicy {
+
+	/**
+	 * Called when a buffer has been assigned to a new block, before the buffer
+	 * is pinned for the first time.
+	 *
+	 * @param buff
+	 *            the buffer holding the newly read (or appended) block
+	 */
+	public void admit(Buffer buff);
+
+	/**
+	 * Called every time the buffer is pinned, including the first pin after
+	 * {@link #admit(Buffer) admit}.
+	 *
+	 * @param buff
+	 *            the pinned buffer
+	 */
+	public void pin(Buffer buff);
+
+	/**
+	 * Called when the pin count of the buffer drops to zero, that is when the
+	 * buffer becomes a replacement candidate. The buffer may have been pinned
+	 * again by the time a victim is chosen, so candidates must still be
+	 * checked in {@link #evict() evict}.
+	 *
+	 * @param buff
+	 *            the unpinned buffer
+	 */
+	public void unpin(Buffer buff);
+
+	/**
+	 * Chooses an unpinned buffer to be replaced, and forgets it. A candidate
+	 * becomes the victim only if {@link Buffer#claim()} succeeds, since other
+	 * threads may pin it concurrently. The victim still holds its old block
+	 * when it is returned; it is {@link #admit(Buffer) admitted} again once it
+	 * is assigned to the new block.
+	 *
+	 * @return the victim, or null if every buffer known to the policy is pinned
+	 */
+	public Buffer evict();
+
+	/**
+	 * Forgets an unpinned buffer that the pool is reusing without asking the
+	 * policy, such as a buffer of a {@link BufferRing}. The buffer has already
+	 * been claimed. Unlike {@link #evict() evict}, the replaced block is not
+	 * remembered as recently used. Called while the pool is locked.
+	 *
+	 * @param buff
+	 *            the claimed buffer
+	 */
+	public void remove(Buffer buff);
+
+	/**
+	 * Returns the unpinned buffers known to the policy, in the order in which
+	 * they would be replaced, without claiming them. The pool uses that order
+	 * to save its hot set. Called while the pool is locked.
+	 *
+	 * @return the replacement candidates, next victim first
+	 */
+	public List<Buffer> victimOrder();
+
+	/**
+	 * Called when the pool is resized, before the buffers in excess, if any,
+	 * are evicted. Called while the pool is locked.
+	 *
+	 * @param numbuffs
+	 *            the new number of buffers in the pool
+	 */
+	public void resize(int numbuffs);
+}
@@ -0,0 +1,198 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+/**
+ * JUnit test cases for the victim order of the replacement policies
+ * other than LRU(2), each on a pool of 4 buffers of its own
+ * @author Team F
+ *
+ */
+public class ReplacementPolicyUnitTest {
+
+	private BufferMgr myBufferMgr;
+
+	private static String dbname = "studentdb";
+	private static String filename = "filename";
+
+	@Before
+	public void setUp() throws Exception {
+		SimpleDB.initFileLogAndBufferMgr(dbname);
+	}
+
+	/**
+	 * Creates the pool and fills it with blocks 11 to 14, each pinned and
+	 * unpinned once, in this order.
+	 */
+	private void fillPool(ReplacementPolicy policy) {
+		myBufferMgr = new BufferMgr(4, policy);
+		for (int i=11; i<=14; i++)
+			unpin(pin(i));
+	}
+
+	private Buffer pin(int blknum) {
+		return myBufferMgr.pin(new Block(filename, blknum));
+	}
+
+	private void unpin(Buffer buff) {
+		myBufferMgr.unpin(buff);
+	}
+
+	private boolean contains(int blknum) {
+		return myBufferMgr.containsMapping(new Block(filename, blknum));
+	}
+
+	private int bufferId(int blknum) {
+		return myBufferMgr.getMapping(new Block(filename, blknum)).getBufferId();
+	}
+
+	@Test
+	public void lru3ReplacementTest() {
+		System.out.println("\n\nIn LRU3 Replacement Test...");
+
+		fillPool(new LRUKPolicy(3, 0));
+		int blk11_bufId = bufferId(11);
+		int blk12_bufId = bufferId(12);
+		int blk13_bufId = bufferId(13);
+		int blk14_bufId = bufferId(14);
+
+		for(int i=0; i<2; i++)
+			unpin(pin(12));
+		for(int i=0; i<2; i++)
+			unpin(pin(14));
+		unpin(pin(11));
+
+		/* Blocks 13 and 11 have fewer than 3 references and go first, the
+		 least recently used first; then block 12, whose 3rd most recent
+		 reference is older than that of block 14 */
+		pin(15);
+		assertTrue(!contains(13) && blk13_bufId == bufferId(15));
+		pin(16);
+		assertTrue(!contains(11) && blk11_bufId == bufferId(16));
+		pin(17);
+		assertTrue(!contains(12) && blk12_bufId == bufferId(17));
+		pin(18);
+		assertTrue(!contains(14) && blk14_bufId == bufferId(18));
+	}
+
+	@Test
+	public void clockReplacementTest() {
+		System.out.println("\n\nIn Clock Replacement Test...");
+
+		fillPool(new ClockPolicy());
+		int blk11_bufId = bufferId(11);
+		int blk12_bufId = bufferId(12);
+		int blk13_bufId = bufferId(13);
+		int blk14_bufId = bufferId(14);
+
+		/* Every reference bit is set: the hand clears them all and comes
+		 back to block 11 */
+		pin(15);
+		assertTrue(!contains(11) && blk11_bufId == bufferId(15));
+
+		/* Block 12 gets a second chance */
+		unpin(pin(12));
+		pin(16);
+		assertTrue(contains(12) && !contains(13) && blk13_bufId == bufferId(16));
+		pin(17);
+		assertTrue(contains(12) && !contains(14) && blk14_bufId == bufferId(17));
+
+		/* The hand skips the pinned buffer of block 15 */
+		pin(18);
+		assertTrue(contains(15) && !contains(12) && blk12_bufId == bufferId(18));
+	}
+
+	/**
+	 * Shrinks and grows a pool under CLOCK: the dropped buffers leave empty
+	 * slots in the ring, which the hand skips and the new buffers reuse.
+	 */
+	@Test
+	public void clockResizeTest() {
+		System.out.println("\n\nIn Clock Resize Test...");
+
+		fillPool(new ClockPolicy());
+		int blk13_bufId = bufferId(13);
+
+		/* The hand clears every bit and drops blocks 11 and 12 */
+		myBufferMgr.resize(2);
+		assertTrue(!contains(11) && !contains(12) && contains(13) && contains(14));
+
+		/* Blocks 15 and 16 take new buffers, and the empty slots */
+		myBufferMgr.resize(4);
+		pin(15);
+		pin(16);
+		assertTrue(contains(13) && contains(14));
+
+		/* The hand goes on from block 13, whose bit is clear */
+		pin(17);
+		assertTrue(!contains(13) && contains(14) && blk13_bufId == bufferId(17));
+	}
+
+	@Test
+	public void twoQReplacementTest() {
+		System.out.println("\n\nIn 2Q Replacement Test...");
+
+		fillPool(new TwoQPolicy(1, 2));
+		int blk11_bufId = bufferId(11);
+		int blk12_bufId = bufferId(12);
+		int blk13_bufId = bufferId(13);
+		int blk14_bufId = bufferId(14);
+
+		/* A1in is over Kin: its oldest block goes, and is remembered in A1out */
+		unpin(pin(15));
+		assertTrue(!contains(11) && blk11_bufId == bufferId(15));
+
+		/* Block 11 is read again while it is in A1out, and enters Am */
+		unpin(pin(11));
+		assertTrue(!contains(12) && blk12_bufId == bufferId(11));
+
+		/* The blocks read once go first, in FIFO order; block 11 stays */
+		pin(16);
+		assertTrue(!contains(13) && blk13_bufId == bufferId(16));
+		pin(17);
+		assertTrue(!contains(14) && blk14_bufId == bufferId(17));
+		pin(18);
+		assertTrue(!contains(15) && blk11_bufId == bufferId(18));
+		assertTrue(contains(11));
+	}
+
+	@Test
+	public void arcReplacementTest() {
+		System.out.println("\n\nIn ARC Replacement Test...");
+
+		fillPool(new ARCPolicy(4));
+		int blk11_bufId = bufferId(11);
+		int blk12_bufId = bufferId(12);
+		int blk13_bufId = bufferId(13);
+		int blk14_bufId = bufferId(14);
+
+		/* Block 12 is referenced twice and moves to T2 */
+		unpin(pin(12));
+
+		/* T1 is larger than p = 0: its least recently used block goes, and
+		 is remembered in B1 */
+		unpin(pin(15));
+		assertTrue(!contains(11) && blk11_bufId == bufferId(15));
+
+		/* A miss on block 11, remembered in B1, grows p to 1 and puts the
+		 block in T2 */
+		unpin(pin(11));
+		assertTrue(!contains(13) && blk13_bufId == bufferId(11));
+
+		pin(16);
+		assertTrue(!contains(14) && blk14_bufId == bufferId(16));
+		pin(17);
+		assertTrue(!contains(15) && blk11_bufId == bufferId(17));
+
+		/* The buffers of T1 are pinned: the least recently used block of T2
+		 goes */
+		pin(18);
+		assertTrue(contains(11) && !contains(12) && blk12_bufId == bufferId(18));
+	}
+}
@@ -0,0 +1,206 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import simpledb.file.Block;
+
+/**
+ * 2Q replacement policy (Johnson and Shasha). A block read for the first time
+ * enters the FIFO queue A1in. When it is replaced from A1in, its address is
+ * remembered in the ghost queue A1out. A block that is read again while it is
+ * remembered in A1out is considered hot and enters the LRU queue Am. Buffers
+ * are replaced from A1in while A1in holds more than Kin buffers, and from Am
+ * otherwise.
+ *
+ * A reference to a buffer in Am moves it to the most recently used end of Am
+ * when the buffer is unpinned, since a pinned buffer cannot be replaced
+ * anyway.
+ *
+ * @author Team F
+ */
+public class TwoQPolicy implements ReplacementPolicy {
+	private static final int A1IN = 1, AM = 2;
+
+	private int kin, kout;
+	private boolean tuned = false;
+	private LinkedHashSet<Buffer> a1in = new LinkedHashSet<Buffer>();
+	private LinkedHashSet<Buffer> am = new LinkedHashSet<Buffer>();
+	private LinkedHashSet<Block> a1out = new LinkedHashSet<Block>();
+
+	/**
+	 * Creates a 2Q policy for a pool of the specified size, using the tuning
+	 * recommended by the authors: Kin is 25% of the pool and Kout is 50%.
+	 *
+	 * @param numbuffs
+	 *            the number of buffers in the pool
+	 */
+	public TwoQPolicy(int numbuffs) {
+		this(Math.max(1, numbuffs / 4), Math.max(1, numbuffs / 2));
+		tuned = true;
+	}
+
+	/**
+	 * Creates a 2Q policy with the specified queue sizes.
+	 *
+	 * @param kin
+	 *            the target size of A1in, in buffers
+	 * @param kout
+	 *            the size of A1out, in block addresses
+	 */
+	public TwoQPolicy(int kin, int kout) {
+		this.kin = kin;
+		this.kout = kout;
+	}
+
+	/**
+	 * Puts the buffer in Am if its block is remembered in A1out, and in A1in
+	 * otherwise.
+	 */
+	public void admit(Buffer buff) {
+		QueueState qs = new QueueState();
+		buff.setPolicyState(qs);
+		if (a1out.remove(buff.block())) {
+			qs.queue = AM;
+			am.add(buff);
+		} else {
+			qs.queue = A1IN;
+			a1in.add(buff);
+		}
+	}
+
+	/**
+	 * Notes that the buffer was referenced again.
+	 */
+	public void pin(Buffer buff) {
+		QueueState qs = (QueueState) buff.policyState();
+		synchronized (qs) {
+			if (qs.fresh)
+				qs.fresh = false;
+			else
+				qs.referenced = true;
+		}
+	}
+
+	/**
+	 * Moves a referenced buffer of Am to its most recently used end.
+	 */
+	public void unpin(Buffer buff) {
+		QueueState qs = (QueueState) buff.policyState();
+		if (qs.referenced && qs.queue == AM) {
+			am.remove(buff);
+			am.add(buff);
+		}
+		qs.referenced = false;
+	}
+
+	/**
+	 * Replaces the oldest unpinned buffer of A1in if A1in is over its target
+	 * size, and the least recently used unpinned buffer of Am otherwise. The
+	 * block of a buffer replaced from A1in is remembered in A1out.
+	 */
+	public Buffer evict() {
+		Buffer victim = null;
+		if (a1in.size() > kin)
+			victim = firstUnpinned(a1in);
+		if (victim == null)
+			victim = firstUnpinned(am);
+		if (victim == null)
+			victim = firstUnpinned(a1in);
+		if (victim == null)
+			return null;
+
+		QueueState qs = (QueueState) victim.policyState();
+		if (qs.queue == A1IN) {
+			a1out.add(victim.block());
+			if (a1out.size() > kout) {
+				Iterator<Block> iter = a1out.iterator();
+				iter.next();
+				iter.remove();
+			}
+		}
+		victim.setPolicyState(null);
+		return victim;
+	}
+
+	/**
+	 * Drops the buffer from its queue, without remembering its block in
+	 * A1out.
+	 */
+	public void remove(Buffer buff) {
+		QueueState qs = (QueueState) buff.policyState();
+		if (qs != null) {
+			if (qs.queue == AM)
+				am.remove(buff);
+			else
+				a1in.remove(buff);
+		}
+		buff.setPolicyState(null);
+	}
+
+	/**
+	 * Returns the unpinned buffers of A1in then of Am if A1in is over its
+	 * target size, and of Am then of A1in otherwise.
+	 */
+	public List<Buffer> victimOrder() {
+		List<Buffer> order = new ArrayList<Buffer>();
+		if (a1in.size() > kin) {
+			addUnpinned(a1in, order);
+			addUnpinned(am, order);
+		} else {
+			addUnpinned(am, order);
+			addUnpinned(a1in, order);
+		}
+		return order;
+	}
+
+	/**
+	 * Applies the recommended tuning to the new size of the pool, if the
+	 * policy was created with it, and trims A1out to the new Kout.
+	 */
+	public void resize(int numbuffs) {
+		if (!tuned)
+			return;
+		kin = Math.max(1, numbuffs / 4);
+		kout = Math.max(1, numbuffs / 2);
+		Iterator<Block> iter = a1out.iterator();
+		while (a1out.size() > kout) {
+			iter.next();
+			iter.remove();
+		}
+	}
+
+	private void addUnpinned(LinkedHashSet<Buffer> queue, List<Buffer> order) {
+		for (Buffer buff : queue)
+			if (!buff.isPinned())
+				order.add(buff);
+	}
+
+	private Buffer firstUnpinned(LinkedHashSet<Buffer> queue) {
+		Iterator<Buffer> iter = queue.iterator();
+		while (iter.hasNext()) {
+			Buffer buff = iter.next();
+			if (buff.claim()) {
+				iter.remove();
+				return buff;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The queue a buffer belongs to, and whether it was referenced again since
+	 * it was last unpinned.
+	 */
+	private static class QueueState {
+		int queue;
+		boolean fresh = true;
+		boolean referenced = false;
+
+		public String toString() {
+			return (queue == AM) ? "[Am]" : "[A1in]";
+		}
+	}
+}
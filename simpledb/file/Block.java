@@ -5,11 +5,20 @@ package simpledb.file;
  * A Block object consists of a filename and a block number.
  * It does not hold the contents of the block;
  * instead, that is the job of a {@link Page} object.
+ * <p>
+ * The block is also identified by its address, a long that packs
+ * the id of its file (see {@link FileIds}) and its block number.
+ * Two blocks are equal if their addresses are, and the hash code
+ * is computed from the address once, so the page table of the
+ * buffer pool and the lock table hash and compare blocks without
+ * looking at their filenames.
  * @author Edward Sciore
  */
 public class Block {
    private String filename;
    private int blknum;
+   private long address;
+   private int hash;
    
    /**
     * Constructs a block reference 
@@ -18,8 +27,40 @@ public class Block {
     * @param blknum the block number
     */
    public Block(String filename, int blknum) {
+      this(filename, FileIds.id(filename), blknum);
+   }
+   
+   /**
+    * Constructs a block reference
+    * for the specified file id and block number.
+    * The filename is found without hashing it, so a caller
+    * that reads many blocks of a file should keep the id of
+    * the file and use this constructor.
+    * @param fileid the id of the file
+    * @param blknum the block number
+    * @author Team F
+    */
+   public Block(int fileid, int blknum) {
+      this(FileIds.name(fileid), fileid, blknum);
+   }
+   
+   private Block(String filename, int fileid, int blknum) {
       this.filename = filename;
       this.blknum   = blknum;
+      this.address  = address(fileid, blknum);
+      this.hash     = Long.hashCode(address * 0x9E3779B97F4A7C15L);
+   }
+   
+   /**
+    * Returns the address of the block with the
+    * specified file id and block number.
+    * @param fileid the id of the file
+    * @param blknum the block number
+    * @return the packed address of the block
+    * @author Team F
+    */
+   public static long address(int fileid, int blknum) {
+      return ((long) fileid << 32) | (blknum & 0xffffffffL);
    }
    
    /**
@@ -38,9 +79,30 @@ public class Block {
       return blknum;
    }
    
+   /**
+    * Returns the id of the file where the block lives.
+    * @return the file id
+    * @author Team F
+    */
+   public int fileId() {
+      return (int) (address >>> 32);
+   }
+   
+   /**
+    * Returns the address of the block, which packs
+    * its file id and its block number.
+    * Blocks of the same file are ordered by block number.
+    * @return the address of the block
+    * @author Team F
+    */
+   public long address() {
+      return address;
+   }
+   
    public boolean equals(Object obj) {
-      Block blk = (Block) obj;
-      return filename.equals(blk.filename) && blknum == blk.blknum;
+      if (!(obj instanceof Block))
+         return false;
+      return address == ((Block) obj).address;
    }
    
    public String toString() {
@@ -48,6 +110,6 @@ public class Block {
    }
    
    public int hashCode() {
-      return toString().hashCode();
+      return hash;
    }
 }
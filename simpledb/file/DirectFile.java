@@ -0,0 +1,119 @@
+package simpledb.file;
+
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import com.sun.nio.file.ExtendedOpenOption;
+
+/**
+ * An open file whose blocks are read and written with direct I/O,
+ * bypassing the page cache of the operating system, so that a block
+ * is cached once, in the buffer pool, instead of twice.
+ * Direct I/O needs byte buffers whose address is aligned on the
+ * block size of the device. The frames of a {@link PageArena} are;
+ * the other pages are read and written through an aligned bounce
+ * buffer of the calling thread.
+ * @author Team F
+ */
+class DirectFile extends OpenFile {
+   private int alignment;
+   private ThreadLocal<ByteBuffer> bounce = new ThreadLocal<ByteBuffer>() {
+      protected ByteBuffer initialValue() {
+         return alignedBuffer(BLOCK_SIZE, alignment);
+      }
+   };
+
+   /**
+    * Opens the specified file of the database directory for direct I/O.
+    * @param filename the name of the file
+    * @param file the file in the database directory
+    * @param alignment the block size of the device
+    * @throws IOException
+    */
+   DirectFile(String filename, File file, int alignment) throws IOException {
+      super(filename, open(file));
+      this.alignment = alignment;
+   }
+
+   /**
+    * Opens a file for direct I/O, creating it if it does not exist.
+    * @throws IOException, or UnsupportedOperationException if the
+    * file system does not support direct I/O
+    */
+   static FileChannel open(File file) throws IOException {
+      return FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                              StandardOpenOption.CREATE, ExtendedOpenOption.DIRECT);
+   }
+
+   /**
+    * Allocates a direct byte buffer of the specified size whose
+    * address is aligned on the specified power of two.
+    */
+   static ByteBuffer alignedBuffer(int size, int alignment) {
+      // an aligned slice ends on a multiple of the alignment too
+      int rounded = (size + alignment - 1) / alignment * alignment;
+      ByteBuffer bb = ByteBuffer.allocateDirect(rounded + alignment).alignedSlice(alignment);
+      bb.limit(size);
+      return bb.slice();
+   }
+
+   void read(int blknum, ByteBuffer bb) throws IOException {
+      if (aligned(bb)) {
+         super.read(blknum, bb);
+         return;
+      }
+      ByteBuffer b = bounce.get();
+      super.read(blknum, b);
+      bb.clear();
+      bb.put(0, b, 0, BLOCK_SIZE);
+   }
+
+   void write(int blknum, ByteBuffer bb) throws IOException {
+      if (aligned(bb)) {
+         super.write(blknum, bb);
+         return;
+      }
+      ByteBuffer b = bounce.get();
+      b.put(0, bb, 0, BLOCK_SIZE);
+      super.write(blknum, b);
+   }
+
+   /**
+    * Reads the run with one scattering read if every byte buffer is
+    * aligned, and block by block otherwise.
+    */
+   void read(int startbnum, ByteBuffer[] bbs) throws IOException {
+      if (aligned(bbs)) {
+         super.read(startbnum, bbs);
+         return;
+      }
+      for (int i = 0; i < bbs.length; i++)
+         read(startbnum + i, bbs[i]);
+   }
+
+   void write(int startbnum, ByteBuffer[] bbs) throws IOException {
+      if (aligned(bbs)) {
+         super.write(startbnum, bbs);
+         return;
+      }
+      for (int i = 0; i < bbs.length; i++)
+         write(startbnum + i, bbs[i]);
+   }
+
+   /**
+    * Returns true if the byte buffer can be used for direct I/O as is.
+    * The channel copies heap buffers into aligned buffers itself.
+    */
+   private boolean aligned(ByteBuffer bb) {
+      return !bb.isDirect() || bb.alignmentOffset(0, alignment) == 0;
+   }
+
+   private boolean aligned(ByteBuffer[] bbs) {
+      for (ByteBuffer bb : bbs)
+         if (!aligned(bb))
+            return false;
+      return true;
+   }
+}
@@ -0,0 +1,146 @@
+package simpledb.file;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of the files that blocks are read from.
+ * Each file is registered once, the first time a block of it
+ * is referenced, and gets a small integer id.
+ * A {@link Block} is addressed by the id of its file and its
+ * block number, so that comparing and hashing blocks never
+ * walks a filename.
+ * The ids are given out per run of the server, and are never
+ * written to disk: the log and the catalog use the filenames.
+ * <p>
+ * The id of a deleted file, such as that of a dropped temporary
+ * table, is released, and its slot is given to a later file.
+ * The low bits of an id are its slot and the high bits count
+ * how many times the slot was given out, so that a block that
+ * still refers to the released id, for example in a replacement
+ * policy's history, never equals a block of the later file.
+ * Released slots are reused in the order they were released.
+ * @author Team F
+ */
+public class FileIds {
+   private static final int SLOT_BITS = 16;
+   private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+   private static final int GEN_MASK = Integer.MAX_VALUE >>> SLOT_BITS;
+
+   private static ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<String,Integer>();
+   private static volatile Entry[] entries = new Entry[64];
+   private static int[] slotIds = new int[64];
+   private static ArrayDeque<Integer> freeSlots = new ArrayDeque<Integer>();
+   private static int numSlots = 0;
+
+   private FileIds() {}
+
+   /**
+    * Returns the id of the specified file,
+    * registering the file if it has no id yet.
+    * @param filename the name of the file
+    * @return the id of the file
+    */
+   public static int id(String filename) {
+      Integer id = ids.get(filename);
+      return (id != null) ? id : register(filename);
+   }
+
+   /**
+    * Returns the name of the file with the specified id.
+    * The lookup takes no lock, so that callers that keep
+    * the id of a file can make blocks of it cheaply.
+    * @param fileid the id of a registered file
+    * @return the name of the file
+    */
+   public static String name(int fileid) {
+      Entry[] current = entries;
+      int slot = fileid & SLOT_MASK;
+      Entry e = (fileid < 0 || slot >= current.length) ? null : current[slot];
+      if (e == null || e.id != fileid)
+         throw new IllegalArgumentException("no file with id " + fileid);
+      return e.name;
+   }
+
+   /**
+    * Returns true if the specified id is that of a registered
+    * file, and false if it was released.
+    * @param fileid the id of a file
+    * @return true if the id still names a file
+    * @author Team F
+    */
+   public static boolean isRegistered(int fileid) {
+      Entry[] current = entries;
+      int slot = fileid & SLOT_MASK;
+      Entry e = (fileid < 0 || slot >= current.length) ? null : current[slot];
+      return e != null && e.id == fileid;
+   }
+
+   /**
+    * Releases the id of the specified file, which was deleted.
+    * Blocks that still refer to the id never equal the blocks
+    * of the file that gets its slot next, nor those of the same
+    * filename if it is registered again.
+    * Releasing a file that has no id does nothing.
+    * @param filename the name of the file
+    * @author Team F
+    */
+   public static synchronized void release(String filename) {
+      Integer id = ids.remove(filename);
+      if (id == null)
+         return;
+      int slot = id & SLOT_MASK;
+      entries[slot] = null;
+      freeSlots.add(slot);
+   }
+
+   /**
+    * Returns the number of files that have an id.
+    * @return the number of registered files
+    * @author Team F
+    */
+   public static int size() {
+      return ids.size();
+   }
+
+   private static synchronized int register(String filename) {
+      Integer existing = ids.get(filename);
+      if (existing != null)
+         return existing;
+      int slot, id;
+      Integer free = freeSlots.poll();
+      if (free != null) {
+         slot = free;
+         int gen = ((slotIds[slot] >>> SLOT_BITS) + 1) & GEN_MASK;
+         id = (gen << SLOT_BITS) | slot;
+      }
+      else {
+         if (numSlots > SLOT_MASK)
+            throw new IllegalStateException("too many files: " + numSlots);
+         slot = numSlots++;
+         if (slot == entries.length) {
+            entries = Arrays.copyOf(entries, 2 * slot);
+            slotIds = Arrays.copyOf(slotIds, 2 * slot);
+         }
+         id = slot;
+      }
+      entries[slot] = new Entry(id, filename);
+      slotIds[slot] = id;
+      ids.put(filename, id);
+      return id;
+   }
+
+   /**
+    * A registered file: its id, and its name.
+    */
+   private static class Entry {
+      final int id;
+      final String name;
+
+      Entry(int id, String name) {
+         this.id = id;
+         this.name = name;
+      }
+   }
+}
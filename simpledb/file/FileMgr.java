@@ -1,10 +1,13 @@
 package simpledb.file;
 
-import static simpledb.file.Page.BLOCK_SIZE;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * The SimpleDB file manager.
@@ -19,30 +22,96 @@ import java.util.*;
  * Method {@link #isNew() isNew} is called during system initialization by {@link simpledb.server.SimpleDB#init}.
  * Method {@link #size(String) size} is called by the log manager and transaction manager to
  * determine the end of the file.
+ * <p>
+ * Writes are not synchronous: a written block reaches the device when
+ * its file is forced by {@link #force(String) force} or
+ * {@link #forceAll() forceAll}, which the log manager and the recovery
+ * manager call where durability matters.
+ * The files of temporary tables are never forced.
+ * <p>
+ * Files can bypass the page cache with direct I/O, see
+ * {@link #setDirectIO(boolean) setDirectIO}.
+ * At most a bounded number of files are open at a time, see
+ * {@link #setMaxOpenFiles(int) setMaxOpenFiles}, and the files of dropped
+ * temporary tables are deleted right away, see {@link #delete(String) delete}.
+ * Files grow by preallocated extents, see
+ * {@link #setExtentSize(int) setExtentSize}.
+ * Reads can also be queued to a pool of I/O threads, see
+ * {@link #startIO(int, int) startIO}, so that the buffer manager
+ * reads blocks ahead without waiting for them. (Team F)
  * @author Edward Sciore
  */
 public class FileMgr {
+   /**
+    * The header file of a database, which records the version of
+    * the on-disk format and the block size of the database.
+    * A database created before the header existed has no header file,
+    * and uses the legacy block size of 400 bytes.
+    * @author Team F
+    */
+   public static final String HEADER_FILE = "simpledb.hdr";
+   public static final int FORMAT_VERSION = 1;
+   public static final int MIN_BLOCK_SIZE = 4096;
+   public static final int MAX_BLOCK_SIZE = 65536;
+   public static final int LEGACY_BLOCK_SIZE = 400;
+   
    private File dbDirectory;
    private boolean isNew;
-   private Map<String,FileChannel> openFiles = new HashMap<String,FileChannel>();
+   private int blocksize;
+   private Map<String,OpenFile> openFiles = new ConcurrentHashMap<String,OpenFile>();
+   private volatile Pattern mapped = null;
+   private volatile int segmentBlocks;
+   private volatile IOQueue ioQueue = null;
+   private volatile int extentBlocks = 1;
+   private volatile int directAlignment = 0;
+   private volatile int maxOpenFiles = Integer.MAX_VALUE;
+   private AtomicLong useClock = new AtomicLong(0);
+   private Set<String> deleted = ConcurrentHashMap.newKeySet();
 
+   /**
+    * Creates a file manager for the specified database,
+    * which is created with the default block size if it is new.
+    * @param dbname the name of the directory that holds the database
+    */
+   public FileMgr(String dbname) {
+      this(dbname, MIN_BLOCK_SIZE);
+   }
+   
    /**
     * Creates a file manager for the specified database.
     * The database will be stored in a folder of that name
     * in the user's home directory.
     * If the folder does not exist, then a folder containing
-    * an empty database is created automatically.
+    * an empty database is created automatically,
+    * with a header file that records the specified block size.
+    * Otherwise the block size is read from the header file of the
+    * database, and the specified block size is ignored.
+    * Either way, the block size of the database becomes
+    * {@link Page#BLOCK_SIZE}.
     * Files for all temporary tables (i.e. tables beginning with "temp") are deleted.
     * @param dbname the name of the directory that holds the database
+    * @param blocksize the block size of a new database, a power of two
+    * between 4K and 64K
+    * @author Team F
     */
-   public FileMgr(String dbname) {
+   public FileMgr(String dbname, int blocksize) {
       String homedir = System.getProperty("user.home");
       dbDirectory = new File(homedir, dbname);
       isNew = !dbDirectory.exists();
 
       // create the directory if the database is new
-      if (isNew && !dbDirectory.mkdir())
-         throw new RuntimeException("cannot create " + dbname);
+      if (isNew) {
+         if (!validBlockSize(blocksize))
+            throw new IllegalArgumentException("block size must be a power of two between "
+                                               + MIN_BLOCK_SIZE + " and " + MAX_BLOCK_SIZE);
+         if (!dbDirectory.mkdir())
+            throw new RuntimeException("cannot create " + dbname);
+         this.blocksize = blocksize;
+         writeHeader();
+      }
+      else
+         readHeader();
+      Page.BLOCK_SIZE = this.blocksize;
 
       // remove any leftover temporary tables
       for (String filename : dbDirectory.list())
@@ -52,14 +121,22 @@ public class FileMgr {
 
    /**
     * Reads the contents of a disk block into a bytebuffer.
+    * Reads are positional and take no lock, so that
+    * blocks are read concurrently.
     * @param blk a reference to a disk block
     * @param bb  the bytebuffer
     */
-   synchronized void read(Block blk, ByteBuffer bb) {
+   void read(Block blk, ByteBuffer bb) {
       try {
-         bb.clear();
-         FileChannel fc = getFile(blk.fileName());
-         fc.read(bb, blk.number() * BLOCK_SIZE);
+         OpenFile f = acquire(blk.fileName(), blk.fileId());
+         if (f == null)
+            throw new FileNotFoundException(blk.fileName());
+         try {
+            f.read(blk.number(), bb);
+         }
+         finally {
+            f.release();
+         }
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
@@ -68,49 +145,452 @@ public class FileMgr {
 
    /**
     * Writes the contents of a bytebuffer into a disk block.
+    * Writes are positional and take no lock.
     * @param blk a reference to a disk block
     * @param bb  the bytebuffer
     */
-   synchronized void write(Block blk, ByteBuffer bb) {
+   void write(Block blk, ByteBuffer bb) {
       try {
-         bb.rewind();
-         FileChannel fc = getFile(blk.fileName());
-         fc.write(bb, blk.number() * BLOCK_SIZE);
+         OpenFile f = acquire(blk.fileName(), blk.fileId());
+         if (f == null)
+            return;  // the file was deleted, and its blocks with it
+         try {
+            f.write(blk.number(), bb);
+         }
+         finally {
+            f.release();
+         }
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
       }
    }
 
+   /**
+    * Reads a run of adjacent disk blocks into bytebuffers,
+    * one block per bytebuffer, with a single vectored read.
+    * @param first a reference to the first block of the run
+    * @param bbs the bytebuffers
+    * @author Team F
+    */
+   void read(Block first, ByteBuffer[] bbs) {
+      try {
+         OpenFile f = acquire(first.fileName(), first.fileId());
+         if (f == null)
+            throw new FileNotFoundException(first.fileName());
+         try {
+            f.read(first.number(), bbs);
+         }
+         finally {
+            f.release();
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + bbs.length + " blocks from " + first);
+      }
+   }
+
+   /**
+    * Writes bytebuffers into a run of adjacent disk blocks,
+    * one block per bytebuffer, with a single vectored write.
+    * @param first a reference to the first block of the run
+    * @param bbs the bytebuffers
+    * @author Team F
+    */
+   void write(Block first, ByteBuffer[] bbs) {
+      try {
+         OpenFile f = acquire(first.fileName(), first.fileId());
+         if (f == null)
+            return;
+         try {
+            f.write(first.number(), bbs);
+         }
+         finally {
+            f.release();
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot write " + bbs.length + " blocks from " + first);
+      }
+   }
+
+   /**
+    * Queues a read of a run of adjacent disk blocks into
+    * bytebuffers, one block per bytebuffer, to the I/O threads,
+    * or reads the run in the calling thread if there are none.
+    * The completion is called once the read is over.
+    * @param first a reference to the first block of the run
+    * @param bbs the bytebuffers
+    * @param done the completion of the read
+    * @author Team F
+    */
+   void readAsync(Block first, ByteBuffer[] bbs, IOCompletion done) {
+      IOQueue q = ioQueue;
+      if (q != null) {
+         q.read(first, bbs, done);
+         return;
+      }
+      RuntimeException error = null;
+      try {
+         read(first, bbs);
+      }
+      catch (RuntimeException e) {
+         error = e;
+      }
+      done.completed(error);
+   }
+
    /**
     * Appends the contents of a bytebuffer to the end
     * of the specified file.
+    * Appends to the same file are serialized; appends
+    * to different files are not.
     * @param filename the name of the file
     * @param bb  the bytebuffer
     * @return a reference to the newly-created block.
     */
-   synchronized Block append(String filename, ByteBuffer bb) {
-      int newblknum = size(filename);
-      Block blk = new Block(filename, newblknum);
-      write(blk, bb);
-      return blk;
+   Block append(String filename, ByteBuffer bb) {
+      try {
+         OpenFile f = acquire(filename);
+         if (f == null)
+            throw new FileNotFoundException(filename);
+         try {
+            int newblknum = f.append(bb);
+            return new Block(f.fileId(), newblknum);
+         }
+         finally {
+            f.release();
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot append to " + filename);
+      }
    }
 
    /**
     * Returns the number of blocks in the specified file.
+    * The size is cached when the file is opened and kept
+    * up to date by the writes, so no system call is made.
+    * It is the logical size of the file, which leaves out
+    * the zeroed blocks of a preallocated extent.
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
-   public synchronized int size(String filename) {
+   public int size(String filename) {
       try {
-         FileChannel fc = getFile(filename);
-         return (int)(fc.size() / BLOCK_SIZE);
+         OpenFile f = acquire(filename);
+         if (f == null)
+            throw new FileNotFoundException(filename);
+         try {
+            return f.size();
+         }
+         finally {
+            f.release();
+         }
       }
       catch (IOException e) {
          throw new RuntimeException("cannot access " + filename);
       }
    }
 
+   /**
+    * Forces the blocks of the specified file that were written since
+    * it was last forced to the device.
+    * The size of the file is forced too if the file grew.
+    * The call does nothing for a temporary file.
+    * Forces of the same file are serialized, so that a call does not
+    * return while another call is still forcing the blocks it took over;
+    * forces of other files, reads and writes go on meanwhile.
+    * @param filename the name of the file
+    * @author Team F
+    */
+   public void force(String filename) {
+      OpenFile f = openFiles.get(filename);
+      if (f != null)
+         force(f);
+   }
+   
+   /**
+    * Forces every file that was written since it was last forced,
+    * except for the files of temporary tables.
+    * @author Team F
+    */
+   public void forceAll() {
+      for (OpenFile f : openFiles.values())
+         force(f);
+   }
+   
+   /**
+    * Opens the files whose names match the specified regular
+    * expression in memory-mapped mode from now on, so that their
+    * blocks are read and written by copying them from and to
+    * mappings of the file instead of by system calls.
+    * The mode suits read-mostly files that fit in memory;
+    * ".*" maps the whole database.
+    * Files that are already open keep their mode.
+    * @param regex the regular expression, or null to map no file
+    * @param segmentSize the size in bytes of a mapped segment,
+    * rounded down to whole blocks
+    * @author Team F
+    */
+   public void mapFiles(String regex, int segmentSize) {
+      segmentBlocks = Math.max(1, segmentSize / Page.BLOCK_SIZE);
+      mapped = (regex == null) ? null : Pattern.compile(regex);
+   }
+   
+   /**
+    * Makes appends extend the files by extents of zeroed blocks
+    * of at most the specified size, instead of block by block,
+    * so that the size of a file, and the metadata that a force
+    * of the file writes, changes once per extent.
+    * A file keeps a logical size, that of the blocks appended
+    * to it, which is what {@link #size(String) size} returns.
+    * @param extentSize the maximum size in bytes of an extent,
+    * rounded down to whole blocks; 0 turns preallocation off
+    * @author Team F
+    */
+   public void setExtentSize(int extentSize) {
+      extentBlocks = Math.max(1, extentSize / Page.BLOCK_SIZE);
+      for (OpenFile f : openFiles.values())
+         f.setMaxExtent(extentBlocks);
+   }
+   
+   /**
+    * Truncates every open file to its logical size, giving back
+    * the unused blocks of its last extent.
+    * Called when the database is closed; the files stay open.
+    * @author Team F
+    */
+   public void truncateExtents() {
+      for (OpenFile f : openFiles.values()) {
+         if (!f.acquire(f.lastUse()))
+            continue;  // closed, and truncated when it was
+         try {
+            f.truncate();
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot truncate " + f.fileName());
+         }
+         finally {
+            f.release();
+         }
+      }
+   }
+   
+   /**
+    * Sets the maximum number of files that are kept open.
+    * When a file is opened past the maximum, the least recently used
+    * file that nobody is using is truncated to its logical size,
+    * forced and closed; it is opened again the next time one of its
+    * blocks is read or written.
+    * The maximum can be exceeded while all the open files are in use.
+    * @param maxOpen the maximum number of open files
+    * @author Team F
+    */
+   public void setMaxOpenFiles(int maxOpen) {
+      maxOpenFiles = Math.max(1, maxOpen);
+      evictIdle(null);
+   }
+   
+   /**
+    * Returns the number of files that are open.
+    * @return the number of open files
+    * @author Team F
+    */
+   public int numOpenFiles() {
+      return openFiles.size();
+   }
+   
+   /**
+    * Closes and deletes the specified file, for example the file of a
+    * temporary table that was dropped, as soon as nobody is using it.
+    * Reads of the file fail from then on, and writes of its blocks,
+    * such as those of buffers that are written back late, are ignored.
+    * The id of the file is released (see {@link FileIds#release}),
+    * which tells the blocks of the deleted file from those of a file
+    * created later with the same name.
+    * @param filename the name of the file
+    * @author Team F
+    */
+   public void delete(String filename) {
+      OpenFile f;
+      synchronized (openFiles) {
+         deleted.add(filename);
+         f = openFiles.remove(filename);
+      }
+      try {
+         if (f != null)
+            f.discard();
+         Files.deleteIfExists(new File(dbDirectory, filename).toPath());
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot delete " + filename);
+      }
+      finally {
+         // from now on the released id keeps out the blocks of the
+         // deleted file, and the name may be created again
+         synchronized (openFiles) {
+            FileIds.release(filename);
+            deleted.remove(filename);
+         }
+      }
+   }
+   
+   /**
+    * Opens the files that are not memory-mapped with direct I/O
+    * from now on, bypassing the page cache of the operating system,
+    * so that a block is not cached both by the buffer pool and by
+    * the operating system.
+    * Direct I/O needs a block size that is a multiple of the block
+    * size of the device, and a file system that supports it; both
+    * are checked here.
+    * Files that are already open keep their mode.
+    * @param on true to use direct I/O, false to go back to buffered I/O
+    * @author Team F
+    */
+   public void setDirectIO(boolean on) {
+      if (!on) {
+         directAlignment = 0;
+         return;
+      }
+      int alignment;
+      try {
+         alignment = (int) Files.getFileStore(dbDirectory.toPath()).getBlockSize();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot get the block size of the device of " + dbDirectory);
+      }
+      if (Integer.bitCount(alignment) != 1 || blocksize % alignment != 0)
+         throw new RuntimeException("cannot use direct I/O: the block size " + blocksize
+                                    + " is not a multiple of the device block size " + alignment);
+      // read the header file directly, to see whether the file system allows it
+      try {
+         FileChannel probe = DirectFile.open(new File(dbDirectory, HEADER_FILE));
+         try {
+            probe.read(DirectFile.alignedBuffer(alignment, alignment), 0);
+         }
+         finally {
+            probe.close();
+         }
+      }
+      catch (IOException | UnsupportedOperationException e) {
+         throw new RuntimeException("cannot use direct I/O in " + dbDirectory);
+      }
+      directAlignment = alignment;
+   }
+   
+   /**
+    * Returns true if the specified file is open with direct I/O.
+    * @param filename the name of the file
+    * @return true if the file bypasses the page cache
+    * @author Team F
+    */
+   public boolean isDirect(String filename) {
+      return openFiles.get(filename) instanceof DirectFile;
+   }
+   
+   /**
+    * Returns true if the specified file is open in memory-mapped mode.
+    * @param filename the name of the file
+    * @return true if the file is mapped
+    * @author Team F
+    */
+   public boolean isMapped(String filename) {
+      return openFiles.get(filename) instanceof MappedFile;
+   }
+   
+   /**
+    * Starts the I/O threads that serve the reads queued with
+    * {@link Page#readAsync(Block, Page[], IOCompletion) readAsync},
+    * replacing the current ones.
+    * @param numthreads the number of I/O threads
+    * @param depth the maximum number of outstanding reads
+    * @author Team F
+    */
+   public synchronized void startIO(int numthreads, int depth) {
+      stopIO();
+      ioQueue = new IOQueue(this, numthreads, depth);
+   }
+   
+   /**
+    * Stops the I/O threads, if there are any, once the queued reads
+    * are over. Later asynchronous reads are done in the calling thread.
+    * @author Team F
+    */
+   public synchronized void stopIO() {
+      IOQueue q = ioQueue;
+      ioQueue = null;
+      if (q != null)
+         q.shutdown();
+   }
+   
+   /**
+    * Forces the specified file, unless it was closed, which forced it.
+    */
+   private void force(OpenFile f) {
+      try {
+         f.forceIfOpen();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot force " + f.fileName());
+      }
+   }
+   
+   /**
+    * Closes the least recently used files that nobody is using, other
+    * than the specified one, until no more files than the maximum are open.
+    * A file is closed under its force lock, so that a force of the file
+    * does not return while the file is being closed, and forced, by
+    * another thread.
+    * @param keep the file that was just opened, or null
+    */
+   private void evictIdle(OpenFile keep) {
+      if (openFiles.size() <= maxOpenFiles)
+         return;
+      List<OpenFile> candidates = new ArrayList<OpenFile>(openFiles.values());
+      candidates.sort(Comparator.comparingLong(OpenFile::lastUse));
+      for (OpenFile f : candidates) {
+         if (openFiles.size() <= maxOpenFiles)
+            return;
+         if (f == keep)
+            continue;
+         try {
+            if (f.closeIfIdle())
+               openFiles.remove(f.fileName(), f);
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot close " + f.fileName());
+         }
+      }
+   }
+   
+   /**
+    * Returns the open file for the specified filename, marked as used
+    * by the calling thread until it releases it.
+    * A file that was closed by the time it is marked is looked up again,
+    * since it is about to leave the map, and is then opened again.
+    * @param filename the specified filename
+    * @return the open file, or null if the file was deleted
+    * @throws IOException
+    */
+   private OpenFile acquire(String filename) throws IOException {
+      return acquire(filename, FileIds.id(filename));
+   }
+   
+   /**
+    * Returns the open file for the specified filename and file id,
+    * like {@link #acquire(String)}, or null if the file with that
+    * id was deleted, even if a file of the same name exists now.
+    */
+   private OpenFile acquire(String filename, int fileid) throws IOException {
+      while (true) {
+         OpenFile f = getFile(filename, fileid);
+         if (f == null || f.acquire(useClock.incrementAndGet()))
+            return f;
+         Thread.yield();
+      }
+   }
+   
    /**
     * Returns a boolean indicating whether the file manager
     * had to create a new database directory.
@@ -119,24 +599,123 @@ public class FileMgr {
    public boolean isNew() {
       return isNew;
    }
+   
+   /**
+    * Returns the block size of the database, as read from
+    * its header file.
+    * @return the number of bytes in a block
+    * @author Team F
+    */
+   public int blockSize() {
+      return blocksize;
+   }
+   
+   /**
+    * Returns the specified file of the database directory,
+    * for files that are not read block by block,
+    * such as the hot set of the buffer pool.
+    * @param filename the name of the file
+    * @return the file in the database directory
+    * @author Team F
+    */
+   public File file(String filename) {
+      return new File(dbDirectory, filename);
+   }
 
    /**
-    * Returns the file channel for the specified filename.
-    * The file channel is stored in a map keyed on the filename.
-    * If the file is not open, then it is opened and the file channel
-    * is added to the map.
+    * Returns the open file for the specified filename.
+    * The open file is stored in a map keyed on the filename.
+    * If the file is not open, then it is opened and
+    * added to the map, and the least recently used idle file is
+    * closed if too many files are open. (Team F)
     * @param filename the specified filename
-    * @return the file channel associated with the open file.
+    * @param fileid the id of the file, which tells a deleted file
+    * from a later one of the same name
+    * @return the open file, or null if the file was deleted
     * @throws IOException
     */
-   private FileChannel getFile(String filename) throws IOException {
-      FileChannel fc = openFiles.get(filename);
-      if (fc == null) {
-         File dbTable = new File(dbDirectory, filename);
-         RandomAccessFile f = new RandomAccessFile(dbTable, "rws");
-         fc = f.getChannel();
-         openFiles.put(filename, fc);
+   private OpenFile getFile(String filename, int fileid) throws IOException {
+      OpenFile f = openFiles.get(filename);
+      if (f == null) {
+         boolean opened = false;
+         synchronized (openFiles) {
+            f = openFiles.get(filename);
+            if (f == null) {
+               if (deleted.contains(filename) || !FileIds.isRegistered(fileid))
+                  return null;
+               File file = new File(dbDirectory, filename);
+               Pattern p = mapped;
+               if (p != null && p.matcher(filename).matches())
+                  f = new MappedFile(filename, file, segmentBlocks);
+               else if (directAlignment > 0)
+                  f = new DirectFile(filename, file, directAlignment);
+               else
+                  f = new OpenFile(filename, file);
+               f.setMaxExtent(extentBlocks);
+               openFiles.put(filename, f);
+               opened = true;
+            }
+         }
+         if (opened)
+            evictIdle(f);
+      }
+      return (f.fileId() == fileid) ? f : null;
+   }
+   
+   /**
+    * Reads the block size of the database from its header file.
+    * A database without a header file predates it, and has
+    * the legacy block size; its header is written so that the
+    * format of the database is recorded from now on.
+    * @author Team F
+    */
+   private void readHeader() {
+      File hdr = new File(dbDirectory, HEADER_FILE);
+      if (!hdr.exists()) {
+         blocksize = LEGACY_BLOCK_SIZE;
+         writeHeader();
+         return;
+      }
+      Properties props = new Properties();
+      try (InputStream in = new FileInputStream(hdr)) {
+         props.load(in);
+         int version = Integer.parseInt(props.getProperty("format.version"));
+         blocksize = Integer.parseInt(props.getProperty("block.size"));
+         if (version > FORMAT_VERSION)
+            throw new RuntimeException("cannot open a database of format version " + version);
+      }
+      catch (IOException | NumberFormatException e) {
+         throw new RuntimeException("cannot read " + hdr);
+      }
+      if (blocksize != LEGACY_BLOCK_SIZE && !validBlockSize(blocksize))
+         throw new RuntimeException("cannot use block size " + blocksize + " of " + hdr);
+   }
+   
+   /**
+    * Writes the format version and the block size of the database
+    * to a new file, and renames it to the header file once it is on disk,
+    * so that a crash never leaves a partial header.
+    * @author Team F
+    */
+   private void writeHeader() {
+      File hdr = new File(dbDirectory, HEADER_FILE);
+      File tmp = new File(dbDirectory, HEADER_FILE + ".new");
+      Properties props = new Properties();
+      props.setProperty("format.version", Integer.toString(FORMAT_VERSION));
+      props.setProperty("block.size", Integer.toString(blocksize));
+      try (FileOutputStream out = new FileOutputStream(tmp)) {
+         props.store(out, "SimpleDB database header");
+         out.getFD().sync();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot write " + hdr);
       }
-      return fc;
+      if (!tmp.renameTo(hdr))
+         throw new RuntimeException("cannot write " + hdr);
+   }
+   
+   private static boolean validBlockSize(int blocksize) {
+      return blocksize >= MIN_BLOCK_SIZE && blocksize <= MAX_BLOCK_SIZE
+            && Integer.bitCount(blocksize) == 1;
    }
 }
@@ -0,0 +1,663 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.server.SimpleDB;
+
+/**
+ * JUnit test cases for the file manager, its database header, the
+ * registry of file ids and the memory of the pages
+ * @author Team F
+ *
+ */
+public class FileMgrUnitTest {
+
+	private static String dbname = "studentdb";
+	private static String filename = "filename";
+	private static String scratchname = "filemgrtestdb";
+
+	private File scratch = new File(System.getProperty("user.home"), scratchname);
+	private int blocksize;
+
+	@Before
+	public void setUp() throws Exception {
+		SimpleDB.initFileLogAndBufferMgr(dbname);
+		blocksize = Page.BLOCK_SIZE;
+		deleteScratch();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		/* Opening the scratch database changed the block size of the pages */
+		Page.BLOCK_SIZE = blocksize;
+		deleteScratch();
+	}
+
+	/**
+	 * The pages of an arena do not overlap, and each of them reads and
+	 * writes a whole block.
+	 */
+	@Test
+	public void arenaFramesTest() {
+		PageArena arena = new PageArena(3);
+		Page[] pages = new Page[3];
+		for (int i = 0; i < 3; i++) {
+			pages[i] = arena.page(i);
+			pages[i].setInt(0, i);
+			pages[i].setInt(Page.BLOCK_SIZE - Page.INT_SIZE, 10 + i);
+		}
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, pages[i].getInt(0));
+			assertEquals(10 + i, pages[i].getInt(Page.BLOCK_SIZE - Page.INT_SIZE));
+		}
+		try {
+			arena.page(3);
+			fail("a frame past the end of the arena was given out");
+		} catch (IllegalArgumentException e) {
+		}
+
+		Block blk = new Block(filename, 30);
+		pages[1].write(blk);
+		Page p = new Page();
+		p.read(blk);
+		assertEquals(1, p.getInt(0));
+		assertEquals(11, p.getInt(Page.BLOCK_SIZE - Page.INT_SIZE));
+		pages[2].read(blk);
+		assertEquals(1, pages[2].getInt(0));
+		assertEquals(0, pages[0].getInt(0));
+	}
+
+	/**
+	 * A page pool gives back the pages that were released, and allocates a
+	 * new page when all of its pages are in use.
+	 */
+	@Test
+	public void pagePoolTest() {
+		PagePool pool = new PagePool(2);
+		Page p1 = pool.acquire();
+		Page p2 = pool.acquire();
+		Page p3 = pool.acquire();
+		assertNotSame(p1, p2);
+		assertNotSame(p1, p3);
+		assertNotSame(p2, p3);
+
+		pool.release(p1);
+		assertSame(p1, pool.acquire());
+		pool.release(p1);
+		pool.release(p2);
+		/* the pool is full, the extra page is dropped */
+		pool.release(p3);
+		Page a = pool.acquire();
+		Page b = pool.acquire();
+		assertTrue((a == p1 && b == p2) || (a == p2 && b == p1));
+		assertNotSame(p3, pool.acquire());
+	}
+	/**
+	 * Threads that read and write different values of a page at the same
+	 * time, without any lock, each see their own values.
+	 */
+	@Test
+	public void pageAbsoluteAccessTest() throws Exception {
+		final Page p = new Page();
+		final Thread[] threads = new Thread[4];
+		final boolean[] failed = new boolean[1];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				int offset = id * 100;
+				for (int i = 0; i < 10000; i++) {
+					p.setInt(offset, i);
+					p.setString(offset + Page.INT_SIZE, "t" + id + "-" + i);
+					if (p.getInt(offset) != i || !p.getString(offset + Page.INT_SIZE).equals("t" + id + "-" + i))
+						failed[0] = true;
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertFalse(failed[0]);
+	}
+
+	/**
+	 * A block made from the id of its file equals the block made from its
+	 * filename, and blocks of different files or numbers differ.
+	 */
+	@Test
+	public void blockAddressTest() {
+		int id = FileIds.id(filename);
+		assertEquals(id, FileIds.id(filename));
+		assertEquals(filename, FileIds.name(id));
+
+		Block blk = new Block(filename, 7);
+		Block byId = new Block(id, 7);
+		assertEquals(blk, byId);
+		assertEquals(blk.hashCode(), byId.hashCode());
+		assertEquals(filename, byId.fileName());
+		assertEquals(Block.address(id, 7), byId.address());
+		assertNotEquals(blk, new Block(filename, 8));
+		assertNotEquals(blk, new Block("otherfile", 7));
+		assertTrue(new Block(filename, 7).address() < new Block(filename, 8).address());
+	}
+
+	/**
+	 * A released file id names no file, and the blocks that still refer to
+	 * it equal no block of the file that gets its slot next, nor of the same
+	 * filename registered again.
+	 */
+	@Test
+	public void releasedFileIdTest() {
+		String tempfile = "tempfileids";
+		Block stale = new Block(tempfile, 3);
+		int id = stale.fileId();
+		int registered = FileIds.size();
+
+		FileIds.release(tempfile);
+		assertEquals(registered - 1, FileIds.size());
+		try {
+			FileIds.name(id);
+			fail("the released id still names a file");
+		} catch (IllegalArgumentException e) {
+		}
+
+		/* register files until one of them gets the released slot */
+		List<String> others = new ArrayList<String>();
+		Block reused = null;
+		for (int i = 0; i < 1000 && reused == null; i++) {
+			String other = "fileids" + i;
+			others.add(other);
+			Block blk = new Block(other, stale.number());
+			if ((blk.fileId() & 0xffff) == (id & 0xffff))
+				reused = blk;
+		}
+		assertNotNull("the released slot was not reused", reused);
+		assertNotEquals(id, reused.fileId());
+		assertNotEquals(stale, reused);
+		assertNotEquals(stale, new Block(tempfile, stale.number()));
+		assertEquals(reused.fileName(), FileIds.name(reused.fileId()));
+
+		for (String other : others)
+			FileIds.release(other);
+		FileIds.release(tempfile);
+		assertEquals(registered - 1, FileIds.size());
+	}
+
+	/**
+	 * Forcing a file that was written keeps its blocks, and forcing a file
+	 * that was not written, or a temporary file, does nothing.
+	 */
+	@Test
+	public void forceTest() {
+		FileMgr fm = SimpleDB.fileMgr();
+		Page p = new Page();
+		p.setInt(0, 17);
+		Block blk = p.append(filename);
+		p.append("tempforce");
+		fm.force(filename);
+		fm.force(filename);
+		fm.force("tempforce");
+		fm.force("nosuchfile");
+		fm.forceAll();
+
+		Page q = new Page();
+		q.read(blk);
+		assertEquals(17, q.getInt(0));
+		assertEquals(blk.number() + 1, fm.size(filename));
+	}
+
+	/**
+	 * Concurrent appends to a file get distinct blocks, and the cached size
+	 * of the file counts them, as well as a write past its end.
+	 */
+	@Test
+	public void concurrentAppendTest() throws Exception {
+		final String appendfile = "appendfile";
+		final FileMgr fm = SimpleDB.fileMgr();
+		final int start = fm.size(appendfile);
+		final Thread[] threads = new Thread[4];
+		final List<List<Integer>> blocks = new ArrayList<List<Integer>>();
+		for (int t = 0; t < threads.length; t++) {
+			final List<Integer> mine = new ArrayList<Integer>();
+			blocks.add(mine);
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				Page p = new Page();
+				for (int i = 0; i < 50; i++) {
+					p.setInt(0, id * 1000 + i);
+					mine.add(p.append(appendfile).number());
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertEquals(start + 200, fm.size(appendfile));
+
+		Page p = new Page();
+		HashSet<Integer> seen = new HashSet<Integer>();
+		for (int t = 0; t < threads.length; t++) {
+			for (int i = 0; i < 50; i++) {
+				int blknum = blocks.get(t).get(i);
+				assertTrue(seen.add(blknum));
+				p.read(new Block(appendfile, blknum));
+				assertEquals(t * 1000 + i, p.getInt(0));
+			}
+		}
+
+		p.write(new Block(appendfile, start + 209));
+		assertEquals(start + 210, fm.size(appendfile));
+	}
+
+	/**
+	 * A mapped file reads and writes its blocks through the mapping, maps
+	 * its last segment again when it grows, and a force puts the mapped
+	 * writes in the file.
+	 */
+	@Test
+	public void mappedFileTest() throws IOException {
+		String mappedfile = "mappedfile";
+		FileMgr fm = SimpleDB.fileMgr();
+		fm.mapFiles("mapped.*", 2 * Page.BLOCK_SIZE);
+		try {
+			Page p = new Page();
+			/* the test blocks start a segment */
+			if (fm.size(mappedfile) % 2 == 1)
+				p.append(mappedfile);
+			int start = fm.size(mappedfile);
+			for (int i = 0; i < 3; i++) {
+				p.setInt(0, i);
+				p.append(mappedfile);
+			}
+			assertTrue(fm.isMapped(mappedfile));
+			assertFalse(fm.isMapped(filename));
+
+			/* block 2 is alone in a segment of 2 blocks */
+			p.read(new Block(mappedfile, start + 2));
+			assertEquals(2, p.getInt(0));
+			p.setInt(0, 20);
+			p.write(new Block(mappedfile, start + 2));
+
+			/* the file grows by an append; the segment is mapped again */
+			p.setInt(0, 3);
+			p.append(mappedfile);
+			p.read(new Block(mappedfile, start + 3));
+			assertEquals(3, p.getInt(0));
+			p.read(new Block(mappedfile, start + 2));
+			assertEquals(20, p.getInt(0));
+			p.setInt(0, 30);
+			p.write(new Block(mappedfile, start + 3));
+
+			fm.force(mappedfile);
+			assertEquals(20, readInt(fm.file(mappedfile), start + 2));
+			assertEquals(30, readInt(fm.file(mappedfile), start + 3));
+			assertEquals(start + 4, fm.size(mappedfile));
+		} finally {
+			fm.mapFiles(null, 0);
+		}
+	}
+
+	private int readInt(File file, int blknum) throws IOException {
+		try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+			f.seek((long) blknum * Page.BLOCK_SIZE);
+			return f.readInt();
+		}
+	}
+
+	/**
+	 * A database created before the header existed is opened with the legacy
+	 * block size, whatever the requested size, and gets a header that
+	 * records it.
+	 */
+	@Test
+	public void legacyDatabaseGetsHeader() throws IOException {
+		assertTrue(scratch.mkdir());
+		FileMgr fm = new FileMgr(scratchname, 8192);
+		assertFalse(fm.isNew());
+		assertEquals(FileMgr.LEGACY_BLOCK_SIZE, fm.blockSize());
+		assertEquals(FileMgr.LEGACY_BLOCK_SIZE, Page.BLOCK_SIZE);
+
+		Properties hdr = readHeader();
+		assertEquals("400", hdr.getProperty("block.size"));
+		assertEquals(Integer.toString(FileMgr.FORMAT_VERSION), hdr.getProperty("format.version"));
+	}
+
+	/**
+	 * A new database is created with the requested block size only if it is
+	 * valid, and a header whose block size is invalid is rejected.
+	 */
+	@Test
+	public void invalidBlockSizeRejected() throws IOException {
+		try {
+			new FileMgr(scratchname, 5000);
+			fail("a block size that is not a power of two was accepted");
+		} catch (IllegalArgumentException e) {
+		}
+		assertFalse(scratch.exists());
+
+		assertTrue(scratch.mkdir());
+		Properties hdr = new Properties();
+		hdr.setProperty("format.version", Integer.toString(FileMgr.FORMAT_VERSION));
+		hdr.setProperty("block.size", "1000");
+		try (OutputStream out = new FileOutputStream(new File(scratch, FileMgr.HEADER_FILE))) {
+			hdr.store(out, null);
+		}
+		try {
+			new FileMgr(scratchname, 8192);
+			fail("the block size 1000 of the header was accepted");
+		} catch (RuntimeException e) {
+		}
+	}
+
+	/**
+	 * Reopening a database keeps the block size of its header, and does not
+	 * rewrite the header, whatever the requested size.
+	 */
+	@Test
+	public void existingHeaderNotOverwritten() throws IOException {
+		FileMgr fm = new FileMgr(scratchname, 8192);
+		assertTrue(fm.isNew());
+		assertEquals(8192, fm.blockSize());
+		File hdr = new File(scratch, FileMgr.HEADER_FILE);
+		byte[] contents = Files.readAllBytes(hdr.toPath());
+
+		fm = new FileMgr(scratchname, 16384);
+		assertFalse(fm.isNew());
+		assertEquals(8192, fm.blockSize());
+		assertArrayEquals(contents, Files.readAllBytes(hdr.toPath()));
+		assertEquals("8192", readHeader().getProperty("block.size"));
+	}
+
+	/**
+	 * A run of pages is written to adjacent blocks with one write, and read
+	 * back the same way, each page holding its own block.
+	 */
+	@Test
+	public void pageRunTest() {
+		Page[] pages = new Page[4];
+		for (int i = 0; i < pages.length; i++) {
+			pages[i] = new Page();
+			pages[i].setInt(0, 100 + i);
+			pages[i].setInt(Page.BLOCK_SIZE - Page.INT_SIZE, 200 + i);
+		}
+		Page.write(new Block(filename, 40), pages);
+		for (int i = 0; i < pages.length; i++) {
+			Page p = new Page();
+			p.read(new Block(filename, 40 + i));
+			assertEquals(100 + i, p.getInt(0));
+			assertEquals(200 + i, p.getInt(Page.BLOCK_SIZE - Page.INT_SIZE));
+		}
+
+		Page[] run = new Page[3];
+		for (int i = 0; i < run.length; i++)
+			run[i] = new Page();
+		Page.read(new Block(filename, 41), run);
+		for (int i = 0; i < run.length; i++) {
+			assertEquals(101 + i, run[i].getInt(0));
+			assertEquals(201 + i, run[i].getInt(Page.BLOCK_SIZE - Page.INT_SIZE));
+		}
+	}
+
+	/**
+	 * At most depth reads are outstanding: a caller that queues one more
+	 * waits until one of them is over.
+	 */
+	@Test(timeout=30000)
+	public void ioQueueDepthTest() throws Exception {
+		final Semaphore started = new Semaphore(0);
+		final CountDownLatch gate = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		FileMgr fm = new FileMgr(scratchname, blocksize) {
+			void read(Block first, ByteBuffer[] bbs) {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				started.release();
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				running.decrementAndGet();
+			}
+		};
+		final IOQueue q = new IOQueue(fm, 4, 2);
+		final CountDownLatch done = new CountDownLatch(3);
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < 3; i++)
+				q.read(new Block(filename, i), new ByteBuffer[] { ByteBuffer.allocate(blocksize) }, error -> done.countDown());
+		});
+		producer.start();
+		started.acquire(2);
+		while (producer.getState() != Thread.State.WAITING)
+			Thread.sleep(10);
+		assertFalse(started.tryAcquire(200, TimeUnit.MILLISECONDS));
+
+		gate.countDown();
+		producer.join();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(2, maxRunning.get());
+		q.shutdown();
+	}
+
+	/**
+	 * The reads queued before a shutdown are completed, errors included,
+	 * and the reads queued after it are done by the calling thread.
+	 */
+	@Test(timeout=30000)
+	public void ioQueueShutdownTest() throws Exception {
+		final CountDownLatch gate = new CountDownLatch(1);
+		final Thread[] readers = new Thread[2];
+		FileMgr fm = new FileMgr(scratchname, blocksize) {
+			void read(Block first, ByteBuffer[] bbs) {
+				readers[first.number()] = Thread.currentThread();
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				throw new RuntimeException("cannot read block " + first.number());
+			}
+		};
+		IOQueue q = new IOQueue(fm, 1, 4);
+		final RuntimeException[] errors = new RuntimeException[2];
+		final CountDownLatch done = new CountDownLatch(1);
+		q.read(new Block(filename, 0), new ByteBuffer[] { ByteBuffer.allocate(blocksize) }, error -> {
+			errors[0] = error;
+			done.countDown();
+		});
+		q.shutdown();
+		gate.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertNotNull(errors[0]);
+		assertNotSame(Thread.currentThread(), readers[0]);
+
+		q.read(new Block(filename, 1), new ByteBuffer[] { ByteBuffer.allocate(blocksize) }, error -> errors[1] = error);
+		assertNotNull(errors[1]);
+		assertSame(Thread.currentThread(), readers[1]);
+	}
+
+	/**
+	 * Appends grow a file by extents that double with it, up to the
+	 * maximum, while its size counts only the appended blocks; truncating
+	 * the extents gives back the zeroed tail.
+	 */
+	@Test
+	public void extentTest() {
+		FileMgr fm = new FileMgr(scratchname, blocksize);
+		fm.setExtentSize(4 * blocksize);
+		File f = fm.file(filename);
+		ByteBuffer bb = ByteBuffer.allocateDirect(blocksize);
+		for (int i = 0; i < 3; i++) {
+			bb.putInt(0, 10 + i);
+			fm.append(filename, bb);
+		}
+		assertEquals(3, fm.size(filename));
+		assertEquals(4L * blocksize, f.length());
+
+		for (int i = 3; i < 5; i++) {
+			bb.putInt(0, 10 + i);
+			fm.append(filename, bb);
+		}
+		assertEquals(5, fm.size(filename));
+		assertEquals(8L * blocksize, f.length());
+
+		fm.truncateExtents();
+		assertEquals(5, fm.size(filename));
+		assertEquals(5L * blocksize, f.length());
+		for (int i = 0; i < 5; i++) {
+			fm.read(new Block(filename, i), bb);
+			assertEquals(10 + i, bb.getInt(0));
+		}
+	}
+
+	/**
+	 * With direct I/O, aligned byte buffers are read and written in place,
+	 * and unaligned ones, single or in a run, go through the bounce buffer.
+	 * Skipped where the file system does not support direct I/O.
+	 */
+	@Test
+	public void directFileTest() throws IOException {
+		FileMgr fm = new FileMgr(scratchname, 4096);
+		try {
+			fm.setDirectIO(true);
+		} catch (RuntimeException e) {
+			assumeNoException(e);
+		}
+		ByteBuffer aligned = DirectFile.alignedBuffer(4096, PageArena.ALIGNMENT);
+		ByteBuffer[] unaligned = new ByteBuffer[2];
+		for (int i = 0; i < unaligned.length; i++) {
+			ByteBuffer bb = DirectFile.alignedBuffer(4096 + 8, PageArena.ALIGNMENT);
+			bb.position(8);
+			unaligned[i] = bb.slice();
+			assertNotEquals(0, unaligned[i].alignmentOffset(0, 512));
+		}
+		aligned.putInt(0, 1);
+		fm.append(filename, aligned);
+		assertTrue(fm.isDirect(filename));
+		unaligned[0].putInt(0, 2);
+		fm.append(filename, unaligned[0]);
+		unaligned[0].putInt(0, 3);
+		unaligned[1].putInt(0, 4);
+		fm.write(new Block(filename, 2), unaligned);
+
+		File f = fm.file(filename);
+		for (int i = 0; i < 4; i++)
+			assertEquals(1 + i, readInt(f, i));
+		fm.read(new Block(filename, 1), aligned);
+		assertEquals(2, aligned.getInt(0));
+		fm.read(new Block(filename, 0), unaligned[0]);
+		assertEquals(1, unaligned[0].getInt(0));
+		fm.read(new Block(filename, 2), new ByteBuffer[] { unaligned[1], unaligned[0] });
+		assertEquals(3, unaligned[1].getInt(0));
+		assertEquals(4, unaligned[0].getInt(0));
+	}
+
+	/**
+	 * Past the maximum number of open files, the least recently used idle
+	 * file is truncated to its logical size and closed, and it is opened
+	 * again the next time it is used.
+	 */
+	@Test
+	public void openFileLimitTest() throws IOException {
+		FileMgr fm = new FileMgr(scratchname, blocksize);
+		fm.setExtentSize(4 * blocksize);
+		fm.setMaxOpenFiles(2);
+		ByteBuffer bb = ByteBuffer.allocateDirect(blocksize);
+		for (int i = 0; i < 3; i++) {
+			bb.putInt(0, 10 + i);
+			fm.append("lru" + i, bb);
+			fm.append("lru" + i, bb);
+			fm.append("lru" + i, bb);
+		}
+		assertEquals(2, fm.numOpenFiles());
+		assertEquals(3L * blocksize, fm.file("lru0").length());
+		assertEquals(4L * blocksize, fm.file("lru2").length());
+
+		/* lru1 is now the least recently used file */
+		fm.read(new Block("lru0", 2), bb);
+		assertEquals(10, bb.getInt(0));
+		assertEquals(2, fm.numOpenFiles());
+		assertEquals(3L * blocksize, fm.file("lru1").length());
+		assertEquals(3, fm.size("lru1"));
+		assertEquals(2, fm.numOpenFiles());
+	}
+
+	/**
+	 * A deleted file cannot be read, late writes of its blocks are ignored,
+	 * and its name can be created again as a new file that the blocks of
+	 * the deleted one do not reach.
+	 */
+	@Test
+	public void deleteTest() throws IOException {
+		FileMgr fm = new FileMgr(scratchname, blocksize);
+		String tempfile = "tempdeleted";
+		ByteBuffer bb = ByteBuffer.allocateDirect(blocksize);
+		bb.putInt(0, 1);
+		Block stale = fm.append(tempfile, bb);
+		Block stale1 = fm.append(tempfile, bb);
+		int registered = FileIds.size();
+
+		fm.delete(tempfile);
+		assertFalse(fm.file(tempfile).exists());
+		assertEquals(registered - 1, FileIds.size());
+		assertFalse(FileIds.isRegistered(stale.fileId()));
+		try {
+			fm.read(stale, bb);
+			fail("a block of a deleted file was read");
+		} catch (RuntimeException e) {
+		}
+		fm.write(stale, bb);
+		assertFalse(fm.file(tempfile).exists());
+
+		bb.putInt(0, 2);
+		Block blk = fm.append(tempfile, bb);
+		assertEquals(0, blk.number());
+		assertNotEquals(stale, blk);
+		assertEquals(1, fm.size(tempfile));
+		bb.putInt(0, 3);
+		fm.write(stale, bb);
+		fm.write(stale1, bb);
+		assertEquals(1, fm.size(tempfile));
+		fm.read(blk, bb);
+		assertEquals(2, bb.getInt(0));
+		fm.delete(tempfile);
+	}
+
+	private Properties readHeader() throws IOException {
+		Properties hdr = new Properties();
+		try (InputStream in = new FileInputStream(new File(scratch, FileMgr.HEADER_FILE))) {
+			hdr.load(in);
+		}
+		return hdr;
+	}
+
+	private void deleteScratch() {
+		File[] files = scratch.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		scratch.delete();
+	}
+}
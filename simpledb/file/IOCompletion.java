@@ -0,0 +1,15 @@
+package simpledb.file;
+
+/**
+ * The callback of a read queued with
+ * {@link Page#readAsync(Block, Page[], IOCompletion) readAsync},
+ * which an I/O thread calls once the read is over.
+ * @author Team F
+ */
+public interface IOCompletion {
+   /**
+    * Called when the read is over.
+    * @param error the error of the read, or null if it succeeded
+    */
+   void completed(RuntimeException error);
+}
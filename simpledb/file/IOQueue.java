@@ -0,0 +1,83 @@
+package simpledb.file;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The I/O threads of the file manager, which read runs of blocks
+ * in the background, so that the thread that asks for the blocks
+ * goes on computing while the disk works.
+ * At most depth reads are outstanding at a time. A caller that
+ * queues one more waits until one of them is over, so that
+ * read-ahead never queues more reads than the device can serve.
+ * @author Team F
+ */
+class IOQueue {
+   private static final AtomicInteger numQueues = new AtomicInteger(0);
+   
+   private FileMgr fm;
+   private ExecutorService threads;
+   private Semaphore slots;
+
+   /**
+    * Starts the specified number of I/O threads.
+    * @param fm the file manager that the blocks are read through
+    * @param numthreads the number of I/O threads
+    * @param depth the maximum number of outstanding reads
+    */
+   IOQueue(FileMgr fm, int numthreads, int depth) {
+      this.fm = fm;
+      slots = new Semaphore(depth);
+      final int id = numQueues.incrementAndGet();
+      threads = Executors.newFixedThreadPool(numthreads, new ThreadFactory() {
+         private int n = 0;
+         public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "simpledb-io-" + id + "-" + (++n));
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   /**
+    * Queues a read of a run of adjacent blocks into the byte buffers,
+    * waiting while depth reads are outstanding.
+    * If the queue was shut down, the blocks are read in the calling thread.
+    * Either way, the completion is called once the read is over.
+    * @param first a reference to the first block of the run
+    * @param bbs the byte buffers, one per block
+    * @param done the completion of the read
+    */
+   void read(final Block first, final ByteBuffer[] bbs, final IOCompletion done) {
+      slots.acquireUninterruptibly();
+      Runnable io = new Runnable() {
+         public void run() {
+            RuntimeException error = null;
+            try {
+               fm.read(first, bbs);
+            }
+            catch (RuntimeException e) {
+               error = e;
+            }
+            finally {
+               slots.release();
+            }
+            done.completed(error);
+         }
+      };
+      try {
+         threads.execute(io);
+      }
+      catch (RejectedExecutionException e) {
+         io.run();
+      }
+   }
+
+   /**
+    * Stops the I/O threads once the queued reads are over.
+    */
+   void shutdown() {
+      threads.shutdown();
+   }
+}
@@ -0,0 +1,134 @@
+package simpledb.file;
+
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An open file whose blocks are read and written through memory mappings
+ * of the file, so that reading a block is a memory copy instead of a
+ * system call.
+ * The file is mapped in segments of a fixed number of blocks. A segment
+ * covers only the blocks that the file has, since a mapping past the end
+ * of a file would extend it; when the file grows by appends, which go
+ * through the channel, the last segment is mapped again the first time
+ * one of the new blocks is read or written.
+ * <p>
+ * A write only copies the page into the mapping. The buffer manager writes
+ * a page after the log records of its modifications are on disk, so the
+ * operating system may write the mapping back at any time afterwards
+ * without breaking the write-ahead rule; the pages of the buffer pool
+ * are never mapped themselves.
+ * Forcing the file forces the mapped segments before the channel.
+ * @author Team F
+ */
+class MappedFile extends OpenFile {
+   private int segmentBlocks;
+   private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+   private volatile boolean mappedDirty = false;
+
+   /**
+    * Opens the specified file of the database directory in mapped mode.
+    * @param filename the name of the file
+    * @param file the file in the database directory
+    * @param segmentBlocks the number of blocks of a segment
+    * @throws IOException
+    */
+   MappedFile(String filename, File file, int segmentBlocks) throws IOException {
+      super(filename, file);
+      this.segmentBlocks = segmentBlocks;
+   }
+
+   void read(int blknum, ByteBuffer bb) throws IOException {
+      MappedByteBuffer seg = segment(blknum);
+      if (seg == null) {
+         super.read(blknum, bb);
+         return;
+      }
+      bb.clear();
+      bb.put(0, seg, offset(blknum), BLOCK_SIZE);
+   }
+
+   void write(int blknum, ByteBuffer bb) throws IOException {
+      MappedByteBuffer seg = segment(blknum);
+      if (seg == null) {
+         super.write(blknum, bb);
+         return;
+      }
+      seg.put(offset(blknum), bb, 0, BLOCK_SIZE);
+      mappedDirty = true;
+      noteWrite(blknum);
+   }
+
+   /**
+    * Copies the blocks of the run from the mapping one by one,
+    * since a copy costs no system call.
+    */
+   void read(int startbnum, ByteBuffer[] bbs) throws IOException {
+      for (int i = 0; i < bbs.length; i++)
+         read(startbnum + i, bbs[i]);
+   }
+
+   void write(int startbnum, ByteBuffer[] bbs) throws IOException {
+      for (int i = 0; i < bbs.length; i++)
+         write(startbnum + i, bbs[i]);
+   }
+
+   void force() throws IOException {
+      synchronized (forceLock()) {
+         if (!isTemp() && mappedDirty) {
+            mappedDirty = false;
+            for (MappedByteBuffer seg : segments)
+               if (seg != null)
+                  seg.force();
+         }
+         super.force();
+      }
+   }
+
+   void close() throws IOException {
+      segments = new MappedByteBuffer[0];
+      super.close();
+   }
+
+   /**
+    * Returns the segment that maps the specified block, mapping it if
+    * needed, or null if the block is past the end of the file.
+    */
+   private MappedByteBuffer segment(int blknum) throws IOException {
+      if (blknum >= size())
+         return null;
+      int k = blknum / segmentBlocks;
+      MappedByteBuffer[] segs = segments;
+      if (k < segs.length && segs[k] != null
+            && segs[k].capacity() >= offset(blknum) + BLOCK_SIZE)
+         return segs[k];
+      return map(k);
+   }
+
+   /**
+    * Maps the blocks of the specified segment that the file has.
+    */
+   private synchronized MappedByteBuffer map(int k) throws IOException {
+      int numblocks = Math.min(segmentBlocks, size() - k * segmentBlocks);
+      MappedByteBuffer[] segs = segments;
+      if (k < segs.length && segs[k] != null && segs[k].capacity() >= numblocks * BLOCK_SIZE)
+         return segs[k];
+      long start = (long) k * segmentBlocks * BLOCK_SIZE;
+      MappedByteBuffer seg = channel().map(FileChannel.MapMode.READ_WRITE, start,
+                                           (long) numblocks * BLOCK_SIZE);
+      if (k < segs.length && segs[k] != null && mappedDirty)
+         segs[k].force();
+      segs = Arrays.copyOf(segs, Math.max(segs.length, k + 1));
+      segs[k] = seg;
+      segments = segs;
+      return seg;
+   }
+
+   private int offset(int blknum) {
+      return (blknum % segmentBlocks) * BLOCK_SIZE;
+   }
+}
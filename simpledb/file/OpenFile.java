@@ -0,0 +1,325 @@
+package simpledb.file;
+
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A file of the database that the file manager has opened.
+ * Blocks are read and written with positional I/O on the file channel,
+ * which is thread-safe, so reads and writes of a file need no lock.
+ * Only appends, and the vectored reads and writes of runs of blocks,
+ * which use the position of the channel, are serialized on the open
+ * file itself.
+ * The number of blocks of the file is cached, so that asking for the
+ * size of the file does not go to the operating system.
+ * The open file also remembers whether it was written since it was
+ * last forced, and whether it grew.
+ * <p>
+ * Appends do not grow the file block by block: the file is extended
+ * by an extent of zeroed blocks at a time, and the number of blocks
+ * is a logical size, that of the blocks appended so far. The extents
+ * double with the file up to a maximum, so that small files stay small.
+ * A file is truncated back to its logical size when the database is
+ * closed, or when the file is closed; after a crash, the zeroed blocks
+ * of the last extent become empty blocks of the file.
+ * <p>
+ * The file manager keeps a bounded number of files open. The threads
+ * that use an open file {@link #acquire(long) acquire} it first, so that it
+ * is only closed when nobody uses it; once closed, it cannot be acquired
+ * any more, and the file manager opens the file again.
+ * @author Team F
+ */
+class OpenFile {
+   private String filename;
+   private int fileid;
+   private FileChannel channel;
+   private boolean temp;
+   private AtomicInteger numBlocks;
+   private AtomicInteger allocated;
+   private int maxExtent = 1;
+   private volatile boolean unforced = false;
+   private volatile boolean grew = false;
+   
+   /**
+    * Serializes the forces of the file, so that a force does not
+    * return while another one is still forcing the blocks it took over.
+    * Forces of different files do not wait for each other.
+    */
+   private final Object forceLock = new Object();
+   
+   private AtomicInteger users = new AtomicInteger(0);
+   private volatile long lastUse = 0;
+
+   /**
+    * Opens the specified file of the database directory,
+    * creating it if it does not exist.
+    * @param filename the name of the file
+    * @param file the file in the database directory
+    * @throws IOException
+    */
+   OpenFile(String filename, File file) throws IOException {
+      this(filename, new RandomAccessFile(file, "rw").getChannel());
+   }
+   
+   /**
+    * Wraps a channel opened on the specified file of the database
+    * directory, for subclasses that open their files differently.
+    * @param filename the name of the file
+    * @param channel the channel of the file
+    * @throws IOException
+    */
+   OpenFile(String filename, FileChannel channel) throws IOException {
+      this.filename = filename;
+      this.fileid = FileIds.id(filename);
+      this.temp = filename.startsWith("temp");
+      this.channel = channel;
+      numBlocks = new AtomicInteger((int) (channel.size() / BLOCK_SIZE));
+      allocated = new AtomicInteger(numBlocks.get());
+   }
+   
+   /**
+    * Sets the maximum number of blocks that an append extends the file by.
+    * A maximum of 1 grows the file one block at a time.
+    */
+   synchronized void setMaxExtent(int blocks) {
+      maxExtent = Math.max(1, blocks);
+   }
+
+   /**
+    * Reads the specified block of the file into the byte buffer.
+    */
+   void read(int blknum, ByteBuffer bb) throws IOException {
+      bb.clear();
+      channel.read(bb, (long) blknum * BLOCK_SIZE);
+   }
+
+   /**
+    * Writes the byte buffer to the specified block of the file,
+    * extending the file if the block is past its end.
+    */
+   void write(int blknum, ByteBuffer bb) throws IOException {
+      bb.rewind();
+      channel.write(bb, (long) blknum * BLOCK_SIZE);
+      noteWrite(blknum);
+   }
+
+   /**
+    * Notes that the specified block was written,
+    * raising the size of the file if the block is past its end.
+    */
+   void noteWrite(int blknum) {
+      if (blknum >= numBlocks.get())
+         numBlocks.accumulateAndGet(blknum + 1, Math::max);
+      if (blknum >= allocated.get() && allocated.getAndAccumulate(blknum + 1, Math::max) <= blknum)
+         grew = true;
+      unforced = true;
+   }
+
+   /**
+    * Reads the run of blocks that starts at the specified block
+    * into the byte buffers, one block per buffer, with one
+    * scattering read.
+    */
+   synchronized void read(int startbnum, ByteBuffer[] bbs) throws IOException {
+      long pos = (long) startbnum * BLOCK_SIZE;
+      long end = pos + (long) bbs.length * BLOCK_SIZE;
+      for (ByteBuffer bb : bbs)
+         bb.clear();
+      channel.position(pos);
+      while (pos < end) {
+         long n = channel.read(bbs);
+         if (n < 0)
+            break;
+         pos += n;
+      }
+   }
+
+   /**
+    * Writes the byte buffers to the run of blocks that starts at the
+    * specified block, one block per buffer, with one gathering write.
+    */
+   synchronized void write(int startbnum, ByteBuffer[] bbs) throws IOException {
+      long pos = (long) startbnum * BLOCK_SIZE;
+      long end = pos + (long) bbs.length * BLOCK_SIZE;
+      for (ByteBuffer bb : bbs)
+         bb.rewind();
+      channel.position(pos);
+      while (pos < end)
+         pos += channel.write(bbs);
+      noteWrite(startbnum + bbs.length - 1);
+   }
+
+   /**
+    * Writes the byte buffer to a new block at the end of the file.
+    * @return the number of the new block
+    */
+   synchronized int append(ByteBuffer bb) throws IOException {
+      int blknum = numBlocks.get();
+      if (blknum >= allocated.get() && maxExtent > 1)
+         extend(blknum);
+      write(blknum, bb);
+      return blknum;
+   }
+
+   /**
+    * Extends the file with an extent of zeroed blocks that starts at the
+    * specified block, with one gathering write.
+    * The extent is as large as the file, within the maximum.
+    */
+   private void extend(int start) throws IOException {
+      int n = Math.min(maxExtent, Math.max(1, start));
+      ByteBuffer zeros = ByteBuffer.allocate(BLOCK_SIZE);
+      ByteBuffer[] bbs = new ByteBuffer[n];
+      for (int i = 0; i < n; i++)
+         bbs[i] = zeros.duplicate();
+      long pos = (long) start * BLOCK_SIZE;
+      long end = pos + (long) n * BLOCK_SIZE;
+      channel.position(pos);
+      while (pos < end)
+         pos += channel.write(bbs);
+      if (allocated.getAndAccumulate(start + n, Math::max) < start + n)
+         grew = true;
+      unforced = true;
+   }
+
+   /**
+    * Truncates the file to its logical size, giving back the zeroed
+    * blocks of its last extent.
+    */
+   synchronized void truncate() throws IOException {
+      int n = numBlocks.get();
+      if (allocated.get() > n) {
+         channel.truncate((long) n * BLOCK_SIZE);
+         allocated.set(n);
+         grew = true;
+         unforced = true;
+      }
+   }
+
+   /**
+    * Marks the file as used by the calling thread until it calls
+    * {@link #release()}, unless the file was closed.
+    * @param now the time of the use, for the least recently used order
+    * @return false if the file was closed
+    */
+   boolean acquire(long now) {
+      while (true) {
+         int n = users.get();
+         if (n < 0)
+            return false;
+         if (users.compareAndSet(n, n + 1)) {
+            lastUse = now;
+            return true;
+         }
+      }
+   }
+
+   void release() {
+      users.decrementAndGet();
+   }
+
+   /**
+    * Returns the time of the last use of the file.
+    */
+   long lastUse() {
+      return lastUse;
+   }
+
+   /**
+    * Closes the file if nobody uses it, after truncating it to its
+    * logical size and forcing it. The force lock is held until the
+    * file is closed, so that a concurrent {@link #forceIfOpen()}
+    * returns only once the file is on the device.
+    * @return false if the file is used or already closed
+    */
+   boolean closeIfIdle() throws IOException {
+      synchronized (forceLock) {
+         if (!users.compareAndSet(0, -1))
+            return false;
+         truncate();
+         force();
+         close();
+         return true;
+      }
+   }
+   
+   /**
+    * Forces the file like {@link #force()}, unless it was closed,
+    * which forced it.
+    */
+   void forceIfOpen() throws IOException {
+      synchronized (forceLock) {
+         if (!acquire(lastUse))
+            return;
+         try {
+            force();
+         }
+         finally {
+            release();
+         }
+      }
+   }
+
+   /**
+    * Closes the file as soon as nobody uses it, without writing
+    * anything, since the file is about to be deleted.
+    */
+   void discard() throws IOException {
+      while (!users.compareAndSet(0, -1))
+         Thread.yield();
+      close();
+   }
+
+   void close() throws IOException {
+      channel.close();
+   }
+
+   /**
+    * Returns the logical number of blocks of the file.
+    */
+   int size() {
+      return numBlocks.get();
+   }
+
+   /**
+    * Forces the blocks written since the last call to the device,
+    * with the size of the file if it grew.
+    * Does nothing for a temporary file.
+    */
+   void force() throws IOException {
+      synchronized (forceLock) {
+         if (temp || !unforced)
+            return;
+         unforced = false;
+         boolean metadata = grew;
+         grew = false;
+         channel.force(metadata);
+      }
+   }
+
+   String fileName() {
+      return filename;
+   }
+
+   /**
+    * Returns the id that the file had when it was opened.
+    */
+   int fileId() {
+      return fileid;
+   }
+
+   FileChannel channel() {
+      return channel;
+   }
+
+   boolean isTemp() {
+      return temp;
+   }
+
+   Object forceLock() {
+      return forceLock;
+   }
+}
@@ -33,16 +33,26 @@ import java.nio.charset.Charset;
  * p3.read(blk);
  * String s = p3.getString(20);
  * </pre>
+ * The get and set methods read and write the array at absolute offsets,
+ * without changing the position of the underlying byte buffer, so that
+ * they need no lock and concurrent readers of a page do not serialize.
+ * A caller that accesses several values that must be consistent with each
+ * other holds the latch of the {@link simpledb.buffer.Buffer Buffer}
+ * that the page belongs to.
+ * Only the disk operations use the position of the byte buffer,
+ * and they remain synchronized.
  * @author Edward Sciore
  */
 public class Page {
    /**
     * The number of bytes in a block.
-    * This value is set unreasonably low, so that it is easier
-    * to create and test databases having a lot of blocks.
-    * A more realistic value would be 4K.
+    * The block size is a setting of each database, chosen when
+    * the database is created and stored in its header file.
+    * The {@link FileMgr} sets this value when it opens the
+    * database, before any page is created.
+    * @author Team F
     */
-   public static final int BLOCK_SIZE = 400;
+   public static int BLOCK_SIZE = 4096;
    
    /**
     * The size of an integer in bytes.
@@ -66,7 +76,7 @@ public class Page {
       return INT_SIZE + (n * (int)bytesPerChar);
    }
    
-   private ByteBuffer contents = ByteBuffer.allocateDirect(BLOCK_SIZE);
+   private ByteBuffer contents;
    private FileMgr filemgr = SimpleDB.fileMgr();
    
    /**
@@ -81,7 +91,20 @@ public class Page {
     * {@link simpledb.server.SimpleDB#initFileLogAndBufferMgr(String)}
     * is called first.
     */
-   public Page() {}
+   public Page() {
+      this(ByteBuffer.allocateDirect(BLOCK_SIZE));
+   }
+   
+   /**
+    * Creates a page whose contents are the specified byte buffer,
+    * which must hold BLOCK_SIZE bytes.
+    * Used by {@link PageArena} to give pages a frame of the arena.
+    * @param contents the memory of the page
+    * @author Team F
+    */
+   Page(ByteBuffer contents) {
+      this.contents = contents;
+   }
    
    /**
     * Populates the page with the contents of the specified disk block. 
@@ -99,6 +122,63 @@ public class Page {
       filemgr.write(blk, contents);
    }
    
+   /**
+    * Populates the pages with the contents of a run of adjacent
+    * disk blocks, one block per page, with a single read.
+    * The pages are read through views of their byte buffers,
+    * so that the run needs none of their locks; the caller
+    * makes sure that nobody else uses the pages meanwhile.
+    * @param first a reference to the first block of the run
+    * @param pages the pages, in block order
+    * @author Team F
+    */
+   public static void read(Block first, Page[] pages) {
+      if (pages.length == 1) {
+         pages[0].read(first);
+         return;
+      }
+      pages[0].filemgr.read(first, views(pages));
+   }
+   
+   /**
+    * Queues a read of a run of adjacent disk blocks into the
+    * pages, one block per page, to the I/O threads of the file
+    * manager, and returns without waiting for it.
+    * As with {@link #read(Block, Page[])}, the caller makes sure
+    * that nobody uses the pages until the completion is called.
+    * @param first a reference to the first block of the run
+    * @param pages the pages, in block order
+    * @param done the completion of the read
+    * @author Team F
+    */
+   public static void readAsync(Block first, Page[] pages, IOCompletion done) {
+      pages[0].filemgr.readAsync(first, views(pages), done);
+   }
+   
+   /**
+    * Writes the pages to a run of adjacent disk blocks,
+    * one page per block, with a single write.
+    * The caller makes sure that the pages are not
+    * modified meanwhile.
+    * @param first a reference to the first block of the run
+    * @param pages the pages, in block order
+    * @author Team F
+    */
+   public static void write(Block first, Page[] pages) {
+      if (pages.length == 1) {
+         pages[0].write(first);
+         return;
+      }
+      pages[0].filemgr.write(first, views(pages));
+   }
+   
+   private static ByteBuffer[] views(Page[] pages) {
+      ByteBuffer[] bbs = new ByteBuffer[pages.length];
+      for (int i = 0; i < pages.length; i++)
+         bbs[i] = pages[i].contents.duplicate();
+      return bbs;
+   }
+   
    /**
     * Appends the contents of the page to the specified file.
     * @param filename the name of the file
@@ -115,9 +195,8 @@ public class Page {
     * @param offset the byte offset within the page
     * @return the integer value at that offset
     */
-   public synchronized int getInt(int offset) {
-      contents.position(offset);
-      return contents.getInt();
+   public int getInt(int offset) {
+      return contents.getInt(offset);
    }
    
    /**
@@ -125,9 +204,8 @@ public class Page {
     * @param offset the byte offset within the page
     * @param val the integer to be written to the page
     */
-   public synchronized void setInt(int offset, int val) {
-      contents.position(offset);
-      contents.putInt(val);
+   public void setInt(int offset, int val) {
+      contents.putInt(offset, val);
    }
    
    /**
@@ -137,11 +215,10 @@ public class Page {
     * @param offset the byte offset within the page
     * @return the string value at that offset
     */
-   public synchronized String getString(int offset) {
-      contents.position(offset);
-      int len = contents.getInt();
+   public String getString(int offset) {
+      int len = contents.getInt(offset);
       byte[] byteval = new byte[len];
-      contents.get(byteval);
+      contents.get(offset + INT_SIZE, byteval);
       return new String(byteval);
    }
    
@@ -150,10 +227,9 @@ public class Page {
     * @param offset the byte offset within the page
     * @param val the string to be written to the page
     */
-   public synchronized void setString(int offset, String val) {
-      contents.position(offset);
+   public void setString(int offset, String val) {
       byte[] byteval = val.getBytes();
-      contents.putInt(byteval.length);
-      contents.put(byteval);
+      contents.putInt(offset, byteval.length);
+      contents.put(offset + INT_SIZE, byteval);
    }
 }
@@ -0,0 +1,54 @@
+package simpledb.file;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single direct byte buffer sliced into fixed-size frames, one per page.
+ * Allocating the memory of many pages at once avoids the cost of many small
+ * direct allocations and the fragmentation of native memory that they cause.
+ * The buffer pool allocates its arena once, when it is created.
+ * The arena starts on a 4K boundary, like its frames if the block size
+ * is a multiple of 4K, so that they can be used for direct I/O.
+ * @author Team F
+ */
+public class PageArena {
+   /**
+    * The alignment of the arena in memory.
+    */
+   public static final int ALIGNMENT = 4096;
+   
+   private ByteBuffer arena;
+   private int numFrames;
+   
+   /**
+    * Allocates an arena for the specified number of pages.
+    * @param numFrames the number of frames of the arena
+    */
+   public PageArena(int numFrames) {
+      this.numFrames = numFrames;
+      arena = DirectFile.alignedBuffer(numFrames * Page.BLOCK_SIZE, ALIGNMENT);
+   }
+   
+   /**
+    * Returns the number of frames of the arena.
+    * @return the number of frames
+    */
+   public int numFrames() {
+      return numFrames;
+   }
+   
+   /**
+    * Creates a page whose contents are the specified frame of the arena.
+    * Each frame must be given to a single page.
+    * @param frame the index of the frame
+    * @return a page backed by the frame
+    */
+   public Page page(int frame) {
+      if (frame < 0 || frame >= numFrames)
+         throw new IllegalArgumentException("no frame " + frame);
+      ByteBuffer dup = arena.duplicate();
+      dup.position(frame * Page.BLOCK_SIZE);
+      dup.limit((frame + 1) * Page.BLOCK_SIZE);
+      return new Page(dup.slice());
+   }
+}
@@ -0,0 +1,45 @@
+package simpledb.file;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of reusable pages for transient uses, such as reading the
+ * log backwards. The pages of the pool come from a {@link PageArena}.
+ * When every page is in use, a new page is allocated, and it is kept
+ * when it is released only if the pool has room for it.
+ * @author Team F
+ */
+public class PagePool {
+   private ArrayDeque<Page> free = new ArrayDeque<Page>();
+   private int capacity;
+   
+   /**
+    * Creates a pool of the specified number of pages.
+    * @param capacity the number of pages kept by the pool
+    */
+   public PagePool(int capacity) {
+      this.capacity = capacity;
+      PageArena arena = new PageArena(capacity);
+      for (int i=0; i<capacity; i++)
+         free.push(arena.page(i));
+   }
+   
+   /**
+    * Returns a page that is not used by anyone else.
+    * @return a free page
+    */
+   public synchronized Page acquire() {
+      Page p = free.poll();
+      return (p != null) ? p : new Page();
+   }
+   
+   /**
+    * Gives back a page obtained from {@link #acquire()}.
+    * The page must not be used afterwards.
+    * @param p the page
+    */
+   public synchronized void release(Page p) {
+      if (free.size() < capacity)
+         free.push(p);
+   }
+}
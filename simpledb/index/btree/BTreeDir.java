@@ -12,7 +12,7 @@ import simpledb.query.Constant;
 public class BTreeDir {
    private TableInfo ti;
    private Transaction tx;
-   private String filename;
+   private int fileid;
    private BTreePage contents;
 
    /**
@@ -25,7 +25,7 @@ public class BTreeDir {
    BTreeDir(Block blk, TableInfo ti, Transaction tx) {
       this.ti = ti;
       this.tx = tx;
-      filename = blk.fileName();
+      fileid = blk.fileId();
       contents = new BTreePage(blk, ti, tx);
    }
 
@@ -112,6 +112,6 @@ public class BTreeDir {
       if (contents.getDataVal(slot+1).equals(searchkey))
          slot++;
       int blknum = contents.getChildNum(slot);
-      return new Block(filename, blknum);
+      return new Block(fileid, blknum);
    }
 }
@@ -144,11 +144,16 @@ public class BTreeIndex implements Index {
     * Estimates the number of block accesses
     * required to find all index records having
     * a particular search key.
+    * The fan-out of the directory is the number of index entries
+    * that fit in a block of the configured size, so a larger block
+    * gives a shallower tree.
     * @param numblocks the number of blocks in the B-tree directory
     * @param rpb the number of index entries per block
     * @return the estimated traversal cost
     */
    public static int searchCost(int numblocks, int rpb) {
+      if (numblocks <= 1 || rpb <= 1)
+         return 1;
       return 1 + (int)(Math.log(numblocks) / Math.log(rpb));
    }
 }
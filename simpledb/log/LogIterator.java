@@ -8,11 +8,16 @@ import java.util.Iterator;
  * A class that provides the ability to move through the
  * records of the log file in reverse order.
  * 
+ * The page of the iterator comes from the page pool of the
+ * log manager, and goes back to it when the iterator reaches
+ * the earliest record or is closed.
+ * 
  * @author Edward Sciore
  */
-class LogIterator implements Iterator<BasicLogRecord> {
+public class LogIterator implements Iterator<BasicLogRecord> {
    private Block blk;
-   private Page pg = new Page();
+   private PagePool pool;
+   private Page pg;
    private int currentrec;
    
    /**
@@ -21,8 +26,10 @@ class LogIterator implements Iterator<BasicLogRecord> {
     * This constructor is called exclusively by
     * {@link LogMgr#iterator()}.
     */
-   LogIterator(Block blk) {
+   LogIterator(Block blk, PagePool pool) {
       this.blk = blk;
+      this.pool = pool;
+      pg = pool.acquire();
       pg.read(blk);
       currentrec = pg.getInt(LogMgr.LAST_POS);
    }
@@ -33,7 +40,10 @@ class LogIterator implements Iterator<BasicLogRecord> {
     * @return true if there is an earlier record
     */
    public boolean hasNext() {
-      return currentrec>0 || blk.number()>0;
+      boolean more = currentrec>0 || blk.number()>0;
+      if (!more)
+         close();
+      return more;
    }
    
    /**
@@ -54,12 +64,25 @@ class LogIterator implements Iterator<BasicLogRecord> {
       throw new UnsupportedOperationException();
    }
    
+   /**
+    * Gives the page of the iterator back to the page pool.
+    * The iterator cannot be used afterwards.
+    * Closing an iterator twice has no effect.
+    * @author Team F
+    */
+   public void close() {
+      if (pg != null) {
+         pool.release(pg);
+         pg = null;
+      }
+   }
+   
    /**
     * Moves to the next log block in reverse order,
     * and positions it after the last record in that block.
     */
    private void moveToNextBlock() {
-      blk = new Block(blk.fileName(), blk.number()-1);
+      blk = new Block(blk.fileId(), blk.number()-1);
       pg.read(blk);
       currentrec = pg.getInt(LogMgr.LAST_POS);
    }
@@ -6,6 +6,7 @@ import simpledb.buffer.PageFormatter;
 import simpledb.file.*;
 import static simpledb.file.Page.*;
 import java.util.*;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -16,6 +17,17 @@ import java.util.*;
  * The log manager does not understand the meaning of these
  * values, which are written and read by the
  * {@link simpledb.tx.recovery.RecoveryMgr recovery manager}.
+ * <p>
+ * Flushes are grouped (Team F). The log records are numbered as
+ * they are appended, and a flush waits until the records appended
+ * before it are on disk. The first thread that needs a flush becomes
+ * the leader: it writes the log page and forces the log file once for
+ * all the records appended so far, while the threads that need a flush
+ * meanwhile wait for it, and the next leader covers all of them at once.
+ * When committers come in batches, the leader can also wait for a short
+ * window before writing, see {@link #setCommitWindow(long) setCommitWindow}.
+ * The leader does not hold the lock of the log manager, so appends go on
+ * while the log is forced.
  * @author Edward Sciore
  */
 public class LogMgr implements Iterable<BasicLogRecord> {
@@ -31,9 +43,16 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * @author Team F 
     */
    public static final int LM_TXN_ID = -2;
+   
+   /**
+    * The number of pages kept for log iterators,
+    * which read the log backwards during rollback and recovery.
+    * @author Team F
+    */
+   private static final int ITERATOR_PAGES = 4;
 
    private String logfile;
-   private Block currentblk;
+   private volatile Block currentblk;
    private int currentpos;
    
    /**
@@ -41,6 +60,30 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * @author Team F
     */
    private Buffer mybuf;
+   
+   /**
+    * The state of the group flushes. The page lock guards the switch of
+    * the log page to a new block, so that a leader never writes a page
+    * that the log manager no longer holds; the flush lock guards the
+    * number of the last record on disk and the election of the leader.
+    * @author Team F
+    */
+   private final Object pageLock = new Object();
+   private final Object flushLock = new Object();
+   private volatile long appendSeq = 0;
+   private long flushedSeq = 0;
+   private boolean flushing = false;
+   private int waiting = 0;
+   private volatile int lastBatch = 0;
+   private long numFlushes = 0;
+   private volatile long windowNanos = 0;
+   
+   /**
+    * The pages of the log iterators are reused instead of being
+    * allocated each time a transaction rolls back.
+    * @author Team F
+    */
+   private PagePool iterpages = new PagePool(ITERATOR_PAGES);
 
    /**
     * Creates the manager for the specified log file.
@@ -67,8 +110,7 @@ public class LogMgr implements Iterable<BasicLogRecord> {
       if (logsize == 0)
          appendNewBlock();
       else {
-    	  currentblk = new Block(logfile, logsize-1);
-    	  this.mybuf = SimpleDB.bufferMgr().pin(currentblk);
+    	  setPage(SimpleDB.bufferMgr().pin(new Block(logfile, logsize-1)));
           currentpos = getLastRecordPosition() + INT_SIZE;
       }
    }
@@ -77,11 +119,114 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * Ensures that the log records corresponding to the
     * specified LSN has been written to disk.
     * All earlier log records will also be written to disk.
+    * The records of earlier blocks are already on disk, since
+    * the log is flushed when it moves to a new block; otherwise
+    * the caller joins the current group flush, or leads the
+    * next one. (Team F)
     * @param lsn the LSN of a log record
     */
    public void flush(int lsn) {
-      if (lsn >= currentLSN())
-         flush();
+      if (lsn < currentLSN())
+         return;
+      long target = appendSeq;
+      boolean interrupted = false;
+      boolean leader;
+      synchronized (flushLock) {
+         waiting++;
+         while (flushedSeq < target && flushing) {
+            try {
+               flushLock.wait();
+            }
+            catch (InterruptedException e) {
+               interrupted = true;
+            }
+         }
+         waiting--;
+         leader = flushedSeq < target;
+         if (leader)
+            flushing = true;
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+      if (leader)
+         lead();
+   }
+   
+   /**
+    * Sets the time that the leader of a group flush waits for more
+    * committers before it writes the log. The leader only waits when
+    * the previous flush was shared, so that a lone committer never does.
+    * @param micros the window in microseconds, or 0 not to wait
+    * @author Team F
+    */
+   public void setCommitWindow(long micros) {
+      windowNanos = Math.max(0, micros) * 1000;
+   }
+   
+   /**
+    * Returns the number of times the log was forced by a flush,
+    * which is less than the number of flushes when they are grouped.
+    * @return the number of group flushes
+    * @author Team F
+    */
+   public long flushes() {
+      synchronized (flushLock) {
+         return numFlushes;
+      }
+   }
+   
+   /**
+    * Returns the number of log records appended so far.
+    * For JUnit tests.
+    * @author Team F
+    */
+   long appendSeq() {
+      return appendSeq;
+   }
+   
+   /**
+    * Returns the number of log records known to be on disk.
+    * For JUnit tests.
+    * @author Team F
+    */
+   long flushedSeq() {
+      synchronized (flushLock) {
+         return flushedSeq;
+      }
+   }
+   
+   /**
+    * Writes the log page and forces the log file for all the records
+    * appended so far, and wakes up the threads that wait for them.
+    * If the write fails, another waiting thread leads the next try.
+    * @author Team F
+    */
+   private void lead() {
+      long seq = 0;
+      boolean ok = false;
+      try {
+         long window = windowNanos;
+         if (window > 0 && lastBatch > 1)
+            LockSupport.parkNanos(window);
+         seq = appendSeq;
+         synchronized (pageLock) {
+            if (mybuf != null)
+               mybuf.forceFlush();
+         }
+         SimpleDB.fileMgr().force(logfile);
+         ok = true;
+      }
+      finally {
+         synchronized (flushLock) {
+            if (ok) {
+               flushedSeq = Math.max(flushedSeq, seq);
+               numFlushes++;
+               lastBatch = waiting + 1;
+            }
+            flushing = false;
+            flushLock.notifyAll();
+         }
+      }
    }
 
    /**
@@ -91,7 +236,7 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     */
    public synchronized Iterator<BasicLogRecord> iterator() {
       flush();
-      return new LogIterator(currentblk);
+      return new LogIterator(currentblk, iterpages);
    }
 
    /**
@@ -111,9 +256,17 @@ public class LogMgr implements Iterable<BasicLogRecord> {
          flush();        // so move to the next block.
          appendNewBlock();
       }
-      for (Object obj : rec)
-         appendVal(obj);
-      finalizeRecord();
+      // the page is never written to disk with a partial record
+      mybuf.latchExclusive();
+      try {
+         for (Object obj : rec)
+            appendVal(obj);
+         finalizeRecord();
+      }
+      finally {
+         mybuf.unlatchExclusive();
+      }
+      appendSeq++;
       return currentLSN();
    }
 
@@ -158,10 +311,29 @@ public class LogMgr implements Iterable<BasicLogRecord> {
    }
 
    /**
-    * Writes the current page to the log file.
+    * Writes the current page to the log file,
+    * and forces the log file to the device.
+    * The caller holds the lock of the log manager,
+    * so every record appended so far is then on disk. (Team F)
     */
    private void flush() {
+      long seq = appendSeq;
       mybuf.forceFlush();
+      SimpleDB.fileMgr().force(logfile);
+      synchronized (flushLock) {
+         flushedSeq = Math.max(flushedSeq, seq);
+      }
+   }
+   
+   /**
+    * Makes the specified buffer the log page.
+    * @author Team F
+    */
+   private void setPage(Buffer buff) {
+      synchronized (pageLock) {
+         mybuf = buff;
+         currentblk = buff.block();
+      }
    }
 
    /**
@@ -169,20 +341,16 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     */
    
    private void appendNewBlock() {
-      currentpos = INT_SIZE;
-      
       /**
        * Flushes the records from the log page
-       * Unpins the existing buffer held by the Log Manager (if any)
-       * Pins a new page in the log buffer by calling Buffer Manager
+       * Pins a new page in the log buffer by calling Buffer Manager,
+       * or moves the buffer held by the Log Manager (if any) to the new
+       * block, so that the log keeps its frame and an append never waits
+       * for a buffer while it holds the lock of the log manager
+       * If the block cannot be appended the log stays on its current page
        * @author Team F
        */
-      if(mybuf != null) {
-    	  flush();
-    	  SimpleDB.bufferMgr().unpin(mybuf);
-      }
-      
-      mybuf = SimpleDB.bufferMgr().pinNew(logfile, new PageFormatter() {
+      PageFormatter fmtr = new PageFormatter() {
 		
 		@Override
 		public void format(Page p) {
@@ -194,8 +362,15 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 			p.setInt(0, 0);
 			
 		}
-	});
-      currentblk = mybuf.block();
+	};
+      if (mybuf == null)
+    	  setPage(SimpleDB.bufferMgr().pinNew(logfile, fmtr));
+      else {
+    	  flush();
+    	  SimpleDB.bufferMgr().moveToNew(mybuf, logfile, fmtr);
+    	  setPage(mybuf);
+      }
+      currentpos = INT_SIZE;
       setLastRecordPosition(0);
       
 //      currentblk = mybuf.append(logfile);
@@ -1,28 +1,147 @@
 package simpledb.log;
-import simpledb.*;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
 import simpledb.buffer.Buffer;
 import simpledb.buffer.BufferMgr;
-import simpledb.buffer.PageFormatter;
 import simpledb.file.Block;
 import simpledb.file.Page;
 import simpledb.server.SimpleDB;
-import simpledb.tx.recovery.RecoveryMgr;
 
+/**
+ * JUnit test cases for the log manager and its group flushes
+ * @author Team F
+ *
+ */
 public class LogMgrUnitTest {
-	public static void main(String args[]) {
-		
-		SimpleDB.initFileLogAndBufferMgr("studentdb");
-//		SimpleDB.init("studentDB");
-		LogMgr logmgr = SimpleDB.logMgr();
-		
+
+	private LogMgr logmgr;
+
+	private static String dbname = "studentdb";
+	private static String filename = "filename";
+
+	@Before
+	public void setUp() throws Exception {
+		SimpleDB.initFileLogAndBufferMgr(dbname);
+		SimpleDB.bufferMgr().stopReadAhead();
+		logmgr = SimpleDB.logMgr();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		logmgr.setCommitWindow(SimpleDB.LOG_COMMIT_WINDOW);
+	}
+
+	@Test
+	public void appendTest() {
+		System.out.println("\n\nIn Append Test...");
+
 		int lsn1 = logmgr.append(new Object[]{"Foo","Bar"});
 		logmgr.flush(lsn1);
 		int lsn2 = logmgr.append(new Object[]{"ABC","XYZ"});
 		logmgr.flush(lsn2);
 		int lsn3 = logmgr.append(new Object[]{"Hello","World"});
 		logmgr.flush(lsn3);
-		
-//		logmgr.printLog();
-		logmgr.printLogPageBuffer();
+		assertEquals(logmgr.appendSeq(), logmgr.flushedSeq());
+
+		/* The log is read back from the most recent record */
+		Iterator<BasicLogRecord> iter = logmgr.iterator();
+		String[][] expected = {{"Hello","World"}, {"ABC","XYZ"}, {"Foo","Bar"}};
+		for (String[] rec : expected) {
+			BasicLogRecord r = iter.next();
+			assertEquals(rec[0], r.nextString());
+			assertEquals(rec[1], r.nextString());
+		}
+	}
+
+	/**
+	 * Committers that flush at the same time share the forces of the log:
+	 * there are fewer forces than commits, and every commit returns once
+	 * its record is on disk.
+	 */
+	@Test(timeout=60000)
+	public void groupFlushTest() throws Exception {
+		System.out.println("\n\nIn Group Flush Test...");
+
+		logmgr.setCommitWindow(1000);
+		final int numThreads = 16, numCommits = 20;
+		final long before = logmgr.flushes();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[numThreads];
+		for (int t=0; t<numThreads; t++) {
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+					for (int i=0; i<numCommits; i++) {
+						int lsn = logmgr.append(new Object[]{"commit", id, i});
+						long seq = logmgr.appendSeq();
+						logmgr.flush(lsn);
+						if (logmgr.flushedSeq() < seq)
+							throw new AssertionError("commit " + i + " of " + id + " returned before its record was on disk");
+					}
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread t : threads)
+			t.join();
+		assertNull(failure[0]);
+
+		long forces = logmgr.flushes() - before;
+		System.out.println(numThreads * numCommits + " commits, " + forces + " forces");
+		assertTrue(forces > 0 && forces < numThreads * numCommits);
+	}
+
+	/**
+	 * Appends records over several log blocks while every buffer of the pool
+	 * is pinned. The log keeps its own frame, so the appender neither waits
+	 * for a buffer nor loses its page, and the records are read back in
+	 * order.
+	 */
+	@Test(timeout=60000)
+	public void fullPoolAppendTest() {
+		System.out.println("\n\nIn Full Pool Append Test...");
+
+		BufferMgr bm = SimpleDB.bufferMgr();
+		List<Buffer> pinned = new ArrayList<Buffer>();
+		for (int i=0; bm.available() > 0; i++)
+			pinned.add(bm.pin(new Block(filename, 11 + i)));
+		assertEquals(0, bm.available());
+
+		String filler = String.format("%40s", "full");
+		int numRecs = 3 * Page.BLOCK_SIZE / Page.STR_SIZE(filler.length());
+		int firstLsn = logmgr.append(new Object[]{filler, 0});
+		int lsn = firstLsn;
+		for (int i=1; i<numRecs; i++)
+			lsn = logmgr.append(new Object[]{filler, i});
+		logmgr.flush(lsn);
+		assertTrue(lsn > firstLsn);
+		assertEquals(0, bm.available());
+
+		Iterator<BasicLogRecord> iter = logmgr.iterator();
+		for (int i=numRecs-1; i>=0; i--) {
+			BasicLogRecord r = iter.next();
+			assertEquals(filler, r.nextString());
+			assertEquals(i, r.nextInt());
+		}
+
+		for (Buffer buff : pinned)
+			bm.unpin(buff);
+		logmgr.flush(logmgr.append(new Object[]{"after", "full"}));
+		assertEquals(logmgr.appendSeq(), logmgr.flushedSeq());
 	}
 }
@@ -1,6 +1,7 @@
 package simpledb.materialize;
 
 import simpledb.tx.Transaction;
+import simpledb.server.SimpleDB;
 import simpledb.record.*;
 import simpledb.query.*;
 
@@ -98,11 +99,13 @@ public class SortPlan implements Plan {
          if (comp.compare(src, currentscan) < 0) {
          // start a new run
          currentscan.close();
+         flush(currenttemp);
          currenttemp = new TempTable(sch, tx);
          temps.add(currenttemp);
          currentscan = (UpdateScan) currenttemp.open();
       }
       currentscan.close();
+      flush(currenttemp);
       return temps;
    }
    
@@ -141,9 +144,22 @@ public class SortPlan implements Plan {
       src1.close();
       src2.close();
       dest.close();
+      p1.drop();
+      p2.drop();
+      flush(result);
       return result;
    }
    
+   /**
+    * Writes the blocks of a complete run together, with
+    * vectored writes, instead of one by one as their
+    * buffers are replaced. (Team F)
+    * @param run the temporary table of the run
+    */
+   private void flush(TempTable run) {
+      SimpleDB.bufferMgr().flushFile(run.getTableInfo().fileName());
+   }
+   
    private boolean copy(Scan src, UpdateScan dest) {
       dest.insert();
       for (String fldname : sch.fields())
@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.server.SimpleDB;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.query.*;
@@ -15,6 +16,7 @@ public class TempTable {
    private static int nextTableNum = 0;
    private TableInfo ti;
    private Transaction tx;
+   private boolean dropped = false;
    
    /**
     * Allocates a name for for a new temporary table
@@ -30,9 +32,11 @@ public class TempTable {
    
    /**
     * Opens a table scan for the temporary table.
+    * Temporary tables are written and read sequentially,
+    * so the scan always uses a buffer ring.
     */
    public UpdateScan open() {
-      return new TableScan(ti, tx);
+      return new TableScan(ti, tx, SimpleDB.scanRing());
    }
    
    /**
@@ -43,6 +47,21 @@ public class TempTable {
       return ti;
    }
    
+   /**
+    * Drops the table once its scans are closed: its buffers
+    * are dropped without being written, and its file is deleted,
+    * instead of waiting for the next startup. Dropping the
+    * table again does nothing. (Team F)
+    */
+   public void drop() {
+      if (dropped)
+         return;
+      dropped = true;
+      String filename = ti.fileName();
+      SimpleDB.bufferMgr().dropFile(filename);
+      SimpleDB.fileMgr().delete(filename);
+   }
+   
    private static synchronized String nextTableName() {
       nextTableNum++;
       return "temp" + nextTableNum;
@@ -46,6 +46,7 @@ public class IndexInfo {
     */
    public Index open() {
       Schema sch = schema();
+      SimpleDB.assignIndexFiles(idxname);
       // Create new HashIndex for hash indexing
       return new HashIndex(idxname, sch, tx);
    }
@@ -59,12 +60,15 @@ public class IndexInfo {
     * It then passes this information to the traversalCost
     * method of the appropriate index type,
     * which provides the estimate.
+    * The number of records per block depends on the block size
+    * of the database, and a partly filled block is counted as a
+    * whole block, since it still has to be read.
     * @return the number of block accesses required to traverse the index
     */
    public int blocksAccessed() {
       TableInfo idxti = new TableInfo("", schema());
-      int rpb = BLOCK_SIZE / idxti.recordLength();
-      int numblocks = si.recordsOutput() / rpb;
+      int rpb = Math.max(1, BLOCK_SIZE / idxti.recordLength());
+      int numblocks = (si.recordsOutput() + rpb - 1) / rpb;
       // Call HashIndex.searchCost for hash indexing
       return HashIndex.searchCost(numblocks, rpb);
    }
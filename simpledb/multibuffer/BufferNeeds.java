@@ -1,11 +1,15 @@
 package simpledb.multibuffer;
 
+import simpledb.buffer.BufferMgr;
 import simpledb.server.SimpleDB;
 
 /**
  * A class containing static methods,
  * which estimate the optimal number of buffers
  * to allocate for a scan.
+ * The number of available buffers is capped by the pin quota of
+ * a transaction, less one buffer for the other scans of the
+ * transaction (Team F).
  * @author Edward Sciore
  */
 public class BufferNeeds {
@@ -19,7 +23,24 @@ public class BufferNeeds {
     * @return the highest number less than the number of available buffers, that is a root of the plan's output size
     */
    public static int bestRoot(int size) {
-      int avail = SimpleDB.bufferMgr().available();
+      BufferMgr bm = SimpleDB.bufferMgr();
+      return bestRoot(size, Math.min(bm.available(), bm.pinQuota() - 1));
+   }
+   
+   /**
+    * Like {@link #bestRoot(int)}, but considers the available
+    * buffers of the pool that the specified file is assigned to.
+    * @param size the size of the output file
+    * @param filename the name of the file
+    * @return the highest number less than the number of available buffers, that is a root of the plan's output size
+    * @author Team F
+    */
+   public static int bestRoot(int size, String filename) {
+      BufferMgr bm = SimpleDB.bufferMgr();
+      return bestRoot(size, Math.min(bm.available(filename), bm.pinQuota(filename) - 1));
+   }
+   
+   private static int bestRoot(int size, int avail) {
       if (avail <= 1)
          return 1;
       int k = Integer.MAX_VALUE;
@@ -40,7 +61,24 @@ public class BufferNeeds {
     * @return the highest number less than the number of available buffers, that is a factor of the plan's output size
     */
    public static int bestFactor(int size) {
-      int avail = SimpleDB.bufferMgr().available();
+      BufferMgr bm = SimpleDB.bufferMgr();
+      return bestFactor(size, Math.min(bm.available(), bm.pinQuota() - 1));
+   }
+   
+   /**
+    * Like {@link #bestFactor(int)}, but considers the available
+    * buffers of the pool that the specified file is assigned to.
+    * @param size the size of the output file
+    * @param filename the name of the file
+    * @return the highest number less than the number of available buffers, that is a factor of the plan's output size
+    * @author Team F
+    */
+   public static int bestFactor(int size, String filename) {
+      BufferMgr bm = SimpleDB.bufferMgr();
+      return bestFactor(size, Math.min(bm.available(filename), bm.pinQuota(filename) - 1));
+   }
+   
+   private static int bestFactor(int size, int avail) {
       if (avail <= 1)
          return 1;
       int k = size;
@@ -2,8 +2,10 @@ package simpledb.multibuffer;
 
 import static java.sql.Types.INTEGER;
 import simpledb.tx.Transaction;
+import simpledb.server.SimpleDB;
 import simpledb.record.*;
 import simpledb.file.Block;
+import simpledb.file.FileIds;
 import simpledb.query.*;
 
 import java.util.ArrayList;
@@ -18,9 +20,19 @@ public class ChunkScan implements Scan {
    private int startbnum, endbnum, current;
    private Schema sch;
    private RecordPage rp;
+   private TableInfo ti;
+   private int fileid;
+   private Transaction tx;
+   private boolean pinned = false;
    
    /**
     * Creates a chunk consisting of the specified pages. 
+    * The whole range of blocks is handed to the read-ahead of the
+    * buffer manager, and each page is pinned when the scan first
+    * reaches it, so that the blocks are read while the scan
+    * processes the earlier ones. If the read-ahead is not running,
+    * the whole chunk is pinned at once instead, so that it is
+    * read with vectored reads. (Team F)
     * @param ti the metadata for the chunked table
     * @param startbnum the starting block number
     * @param endbnum  the ending block number
@@ -31,11 +43,15 @@ public class ChunkScan implements Scan {
       this.startbnum = startbnum;
       this.endbnum   = endbnum;
       this.sch = ti.schema();
-      String filename = ti.fileName();
-      for (int i=startbnum; i<=endbnum; i++) {
-         Block blk = new Block(filename, i);
-         pages.add(new RecordPage(blk, ti, tx));
+      this.ti = ti;
+      this.fileid = FileIds.id(ti.fileName());
+      this.tx = tx;
+      if (!SimpleDB.bufferMgr().prefetch(ti.fileName(), startbnum, endbnum)) {
+         tx.pinRange(ti.fileName(), startbnum, endbnum);
+         pinned = true;
       }
+      for (int i=startbnum; i<=endbnum; i++)
+         pages.add(null);
       beforeFirst();
    }
    
@@ -69,7 +85,13 @@ public class ChunkScan implements Scan {
     */
    public void close() {
       for (RecordPage r : pages)
-         r.close();
+         if (r != null)
+            r.close();
+      if (pinned) {
+         for (int i=startbnum; i<=endbnum; i++)
+            tx.unpin(new Block(ti.fileName(), i));
+         pinned = false;
+      }
    }
    
    /**
@@ -106,6 +128,11 @@ public class ChunkScan implements Scan {
    private void moveToBlock(int blknum) {
       current = blknum;
       rp = pages.get(current - startbnum);
+      if (rp == null) {
+         Block blk = new Block(fileid, current);
+         rp = new RecordPage(blk, ti, tx);
+         pages.set(current - startbnum, rp);
+      }
       rp.moveToId(-1);
    }
 }
\ No newline at end of file
@@ -43,9 +43,8 @@ public class MultiBufferProductPlan implements Plan {
     */
    public Scan open() {
       TempTable tt = copyRecordsFrom(rhs);
-      TableInfo ti = tt.getTableInfo();
       Scan leftscan = lhs.open();
-      return new MultiBufferProductScan(leftscan, ti, tx);
+      return new MultiBufferProductScan(leftscan, tt, tx);
    }
    
    /**
@@ -2,6 +2,7 @@ package simpledb.multibuffer;
 
 import simpledb.tx.Transaction;
 import simpledb.record.TableInfo;
+import simpledb.materialize.TempTable;
 import simpledb.query.*;
 
 /** 
@@ -13,6 +14,7 @@ public class MultiBufferProductScan implements Scan {
    private Scan lhsscan, rhsscan=null, prodscan;
    private TableInfo ti;
    private Transaction tx;
+   private TempTable temp = null;
    private int chunksize, nextblknum, filesize;
    
    
@@ -27,10 +29,23 @@ public class MultiBufferProductScan implements Scan {
       this.ti = ti;
       this.tx = tx;
       filesize = tx.size(ti.fileName());
-      chunksize = BufferNeeds.bestFactor(filesize);
+      chunksize = BufferNeeds.bestFactor(filesize, ti.fileName());
       beforeFirst();
    }
    
+   /**
+    * Creates the scan class for the product of the LHS scan and a
+    * temporary table, which is dropped when the scan is closed.
+    * @param lhsscan the LHS scan
+    * @param temp the materialized RHS table
+    * @param tx the current transaction
+    * @author Team F
+    */
+   public MultiBufferProductScan(Scan lhsscan, TempTable temp, Transaction tx) {
+      this(lhsscan, temp.getTableInfo(), tx);
+      this.temp = temp;
+   }
+   
    /**
     * Positions the scan before the first record.
     * That is, the LHS scan is positioned at its first record,
@@ -58,11 +73,14 @@ public class MultiBufferProductScan implements Scan {
    }
    
    /**
-    * Closes the current scans.
+    * Closes the current scans,
+    * and drops the RHS table if it is temporary. (Team F)
     * @see simpledb.query.Scan#close()
     */
    public void close() {
       prodscan.close();
+      if (temp != null)
+         temp.drop();
    }
    
    /** 
@@ -27,10 +27,12 @@ public class TablePlan implements Plan {
    
    /**
     * Creates a table scan for this query.
+    * A scan of a large table uses a buffer ring,
+    * see {@link SimpleDB#scanRing(int)}.
     * @see simpledb.query.Plan#open()
     */
    public Scan open() {
-      return new TableScan(ti, tx);
+      return new TableScan(ti, tx, SimpleDB.scanRing(si.blocksAccessed()));
    }
    
    /**
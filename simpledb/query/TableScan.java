@@ -1,6 +1,7 @@
 package simpledb.query;
 
 import static java.sql.Types.INTEGER;
+import simpledb.buffer.BufferRing;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 
@@ -23,7 +24,18 @@ public class TableScan implements UpdateScan {
     * @param tx the calling transaction
     */
    public TableScan(TableInfo ti, Transaction tx) {
-      rf  = new RecordFile(ti, tx);
+      this(ti, tx, null);
+   }
+   
+   /**
+    * Creates a new table scan that reads the blocks of the
+    * table into the buffers of the specified ring.
+    * @param ti the table's metadata
+    * @param tx the calling transaction
+    * @param ring the buffer ring of the scan, or null
+    */
+   public TableScan(TableInfo ti, Transaction tx, BufferRing ring) {
+      rf  = new RecordFile(ti, tx, ring);
       sch = ti.schema();
    }
    
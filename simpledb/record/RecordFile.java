@@ -1,6 +1,8 @@
 package simpledb.record;
 
+import simpledb.buffer.BufferRing;
 import simpledb.file.Block;
+import simpledb.file.FileIds;
 import simpledb.tx.Transaction;
 
 /**
@@ -13,8 +15,10 @@ public class RecordFile {
    private TableInfo ti;
    private Transaction tx;
    private String filename;
+   private int fileid;
    private RecordPage rp;
    private int currentblknum;
+   private BufferRing ring;
    
    /**
     * Constructs an object to manage a file of records.
@@ -23,9 +27,24 @@ public class RecordFile {
     * @param tx the transaction
     */
    public RecordFile(TableInfo ti, Transaction tx) {
+      this(ti, tx, null);
+   }
+   
+   /**
+    * Constructs an object to manage a file of records,
+    * whose blocks are read into the buffers of the specified
+    * ring when they are not in the pool.
+    * If the file does not exist, it is created.
+    * @param ti the table metadata
+    * @param tx the transaction
+    * @param ring the buffer ring of the scan, or null
+    */
+   public RecordFile(TableInfo ti, Transaction tx, BufferRing ring) {
       this.ti = ti;
       this.tx = tx;
+      this.ring = ring;
       filename = ti.fileName();
+      fileid = FileIds.id(filename);
       if (tx.size(filename) == 0)
          appendBlock();
       moveTo(0);
@@ -149,8 +168,8 @@ public class RecordFile {
       if (rp != null)
          rp.close();
       currentblknum = b;
-      Block blk = new Block(filename, currentblknum);
-      rp = new RecordPage(blk, ti, tx);
+      Block blk = new Block(fileid, currentblknum);
+      rp = new RecordPage(blk, ti, tx, ring);
    }
    
    private boolean atLastBlock() {
@@ -159,6 +178,6 @@ public class RecordFile {
    
    private void appendBlock() {
       RecordFormatter fmtr = new RecordFormatter(ti);
-      tx.append(filename, fmtr);
+      tx.append(filename, fmtr, ring);
    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package simpledb.record;
 
 import static simpledb.file.Page.*;
+import simpledb.buffer.BufferRing;
 import simpledb.file.Block;
 import simpledb.tx.Transaction;
 
@@ -24,11 +25,23 @@ public class RecordPage {
      * @param tx the transaction performing the operations
      */
    public RecordPage(Block blk, TableInfo ti, Transaction tx) {
+      this(blk, ti, tx, null);
+   }
+   
+   /** Creates the record manager for the specified block,
+     * reading the block into a buffer of the specified ring
+     * if it is not in the pool.
+     * @param blk a reference to the disk block
+     * @param ti the table's metadata
+     * @param tx the transaction performing the operations
+     * @param ring the buffer ring of the scan, or null
+     */
+   public RecordPage(Block blk, TableInfo ti, Transaction tx, BufferRing ring) {
       this.blk = blk;
       this.ti = ti;
       this.tx = tx;
       slotsize = ti.recordLength() + INT_SIZE;
-      tx.pin(blk);
+      tx.pin(blk, ring);
   }
    
    /**
@@ -1,5 +1,6 @@
 package simpledb.server;
 
+import java.util.regex.Pattern;
 import simpledb.file.FileMgr;
 import simpledb.buffer.*;
 import simpledb.tx.Transaction;
@@ -26,10 +27,150 @@ public class SimpleDB {
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
    
+   /**
+    * The block size of a new database, a power of two between
+    * 4K and 64K. An existing database keeps the block size
+    * recorded in its header file.
+    * @author Team F
+    */
+   public static int BLOCK_SIZE = FileMgr.MIN_BLOCK_SIZE;
+   
+   /**
+    * The files that are read and written through memory mappings,
+    * as a regular expression on their names (".*" for the whole
+    * database, null for none), and the size of a mapped segment.
+    * @author Team F
+    */
+   public static String MAPPED_FILES = null;
+   public static int MAPPED_SEGMENT_SIZE = 16 * 1024 * 1024;
+   
+   /**
+    * Whether the files that are not memory-mapped are read and
+    * written with direct I/O, bypassing the page cache of the
+    * operating system. The block size must then be a multiple of
+    * the block size of the device, which is checked at startup.
+    * @author Team F
+    */
+   public static boolean DIRECT_IO = false;
+   
+   /**
+    * The I/O threads that read blocks ahead of the scans in the
+    * background, and the maximum number of reads that may be
+    * outstanding at a time. With 0 threads, blocks read ahead are
+    * read by the read-ahead thread itself.
+    * @author Team F
+    */
+   public static int IO_THREADS = 4;
+   public static int IO_QUEUE_DEPTH = 32;
+   
+   /**
+    * The maximum size of the extents that files grow by.
+    * An extent is as large as its file up to that size, and 0
+    * grows files one block at a time.
+    * @author Team F
+    */
+   public static int FILE_EXTENT_SIZE = 1024 * 1024;
+   
+   /**
+    * The maximum number of files that the file manager keeps open.
+    * The least recently used files that are idle are closed past it.
+    * @author Team F
+    */
+   public static int MAX_OPEN_FILES = 256;
+   
+   /**
+    * The time in microseconds that the leader of a group flush of
+    * the log waits for more committers, when commits come in batches.
+    * @author Team F
+    */
+   public static long LOG_COMMIT_WINDOW = 100;
+   
+   /**
+    * The replacement policy of the buffer pool, one of
+    * "LRU-K", "CLOCK", "2Q" and "ARC", and the tuning of
+    * the LRU-K policy (K and the correlated reference period, in pins).
+    * @author Team F
+    */
+   public static String BUFFER_POLICY = "LRU-K";
+   public static int LRU_K = 2;
+   public static int LRU_CORRELATED_PERIOD = 0;
+   
+   /**
+    * The background writer of the buffer pool. Every
+    * BUFFER_WRITER_INTERVAL milliseconds, if more than the
+    * fraction BUFFER_DIRTY_HIGH of the buffers are dirty, it writes
+    * unpinned dirty buffers until at most BUFFER_DIRTY_LOW are.
+    * An interval of 0 disables the writer.
+    * @author Team F
+    */
+   public static long BUFFER_WRITER_INTERVAL = 100;
+   public static double BUFFER_DIRTY_LOW = 0.1;
+   public static double BUFFER_DIRTY_HIGH = 0.3;
+   
+   /**
+    * The sequential read-ahead of the buffer pool. Once
+    * READ_AHEAD_TRIGGER consecutive blocks of a file have been
+    * pinned, the next READ_AHEAD_BLOCKS blocks are read in the
+    * background. A depth of 0 disables the read-ahead.
+    * @author Team F
+    */
+   public static int READ_AHEAD_BLOCKS = 8;
+   public static int READ_AHEAD_TRIGGER = 2;
+   
+   /**
+    * The number of buffers in the ring of a large scan, and the
+    * fraction of the pool above which a table scan is large.
+    * @author Team F
+    */
+   public static int SCAN_RING_SIZE = 2;
+   public static double SCAN_RING_THRESHOLD = 0.25;
+   
+   /**
+    * The file of the database directory that holds the hot set
+    * of the buffer pool, and the time between two saves of the
+    * hot set, in milliseconds. An interval of 0 disables saving
+    * and reloading the hot set.
+    * @author Team F
+    */
+   public static String BUFFER_HOTSET_FILE = "buffer.hot";
+   public static long BUFFER_HOTSET_INTERVAL = 60000;
+   
+   /**
+    * The optional "keep" and "recycle" buffer pools, which are
+    * added to the default pool of BUFFER_SIZE buffers when their
+    * size is not 0. The files whose name matches KEEP_POOL_FILES
+    * (the catalog tables) and the files of the indexes go to the
+    * keep pool, so that their pages stay resident; the files that
+    * match RECYCLE_POOL_FILES (temporary tables, including sort
+    * runs) go to the recycle pool, so that they do not push other
+    * pages out of the default pool.
+    * @author Team F
+    */
+   public static final String KEEP_POOL = "keep";
+   public static final String RECYCLE_POOL = "recycle";
+   public static int KEEP_POOL_SIZE = 0;
+   public static String KEEP_POOL_POLICY = "LRU-K";
+   public static String KEEP_POOL_FILES = "(tblcat|fldcat|idxcat|viewcat)\\.tbl";
+   public static int RECYCLE_POOL_SIZE = 0;
+   public static String RECYCLE_POOL_POLICY = "CLOCK";
+   public static String RECYCLE_POOL_FILES = "temp.*";
+   
+   /**
+    * The fraction of the buffers of each pool that a single
+    * transaction may pin, and whether the blocks that a transaction
+    * still pins when it commits or rolls back are reported by a
+    * PinLeakException, with the stack traces of the calls that
+    * pinned them.
+    * @author Team F
+    */
+   public static double BUFFER_PIN_QUOTA = 0.75;
+   public static boolean PIN_LEAK_DEBUG = false;
+   
    private static FileMgr     fm;
    private static BufferMgr   bm;
    private static LogMgr      logm;
    private static MetadataMgr mdm;
+   private static boolean hooked = false;
    
    /**
     * Initializes the system.
@@ -38,6 +179,7 @@ public class SimpleDB {
     */
    public static void init(String dirname) {
       initFileLogAndBufferMgr(dirname);
+      addShutdownHook();
       Transaction tx = new Transaction();
       boolean isnew = fm.isNew();
       if (isnew)
@@ -48,6 +190,8 @@ public class SimpleDB {
       }
       initMetadataMgr(isnew, tx);
       tx.commit();
+      if (!isnew && BUFFER_HOTSET_INTERVAL > 0)
+         bm.warmUp(fm.file(BUFFER_HOTSET_FILE));
    }
    
    // The following initialization methods are useful for 
@@ -59,7 +203,19 @@ public class SimpleDB {
     * @param dirname the name of the database directory
     */
    public static void initFileMgr(String dirname) {
-      fm = new FileMgr(dirname);
+      if (fm != null) {
+         fm.stopIO();
+         fm.truncateExtents();
+      }
+      fm = new FileMgr(dirname, BLOCK_SIZE);
+      fm.setExtentSize(FILE_EXTENT_SIZE);
+      fm.setMaxOpenFiles(MAX_OPEN_FILES);
+      if (DIRECT_IO)
+         fm.setDirectIO(true);
+      if (MAPPED_FILES != null)
+         fm.mapFiles(MAPPED_FILES, MAPPED_SEGMENT_SIZE);
+      if (IO_THREADS > 0)
+         fm.startIO(IO_THREADS, IO_QUEUE_DEPTH);
    }
    
    /**
@@ -69,6 +225,7 @@ public class SimpleDB {
    public static void initFileAndLogMgr(String dirname) {
       initFileMgr(dirname);
       logm = new LogMgr(LOG_FILE);
+      logm.setCommitWindow(LOG_COMMIT_WINDOW);
    }
    
    /**
@@ -78,11 +235,35 @@ public class SimpleDB {
    public static void initFileLogAndBufferMgr(String dirname) {
 	   /**
 	    * Buffer manager had to be initialized before log manager 
-	    * to allow the log manger to pin a page in the buffer pool
+	    * to allow the log manger to pin a page in the buffer pool,
+	    * and after the file manager, which reads the block size
+	    * that the pages of the pool are allocated with.
 	    * @author Team F
 	    */
-	   bm = new BufferMgr(BUFFER_SIZE);
-	   initFileAndLogMgr(dirname);
+	   if (bm != null) {
+		   bm.stopHotSet();
+		   bm.stopWriter();
+		   bm.stopReadAhead();
+	   }
+	   initFileMgr(dirname);
+	   bm = new BufferMgr(BUFFER_SIZE, replacementPolicy(BUFFER_POLICY, BUFFER_SIZE));
+	   if (KEEP_POOL_SIZE > 0) {
+		   bm.addPool(KEEP_POOL, KEEP_POOL_SIZE, replacementPolicy(KEEP_POOL_POLICY, KEEP_POOL_SIZE));
+		   bm.assign(KEEP_POOL_FILES, KEEP_POOL);
+	   }
+	   bm.setPinQuota(BUFFER_PIN_QUOTA);
+	   if (RECYCLE_POOL_SIZE > 0) {
+		   bm.addPool(RECYCLE_POOL, RECYCLE_POOL_SIZE, replacementPolicy(RECYCLE_POOL_POLICY, RECYCLE_POOL_SIZE));
+		   bm.assign(RECYCLE_POOL_FILES, RECYCLE_POOL);
+	   }
+	   logm = new LogMgr(LOG_FILE);
+	   logm.setCommitWindow(LOG_COMMIT_WINDOW);
+	   if (BUFFER_WRITER_INTERVAL > 0)
+		   bm.startWriter(BUFFER_DIRTY_LOW, BUFFER_DIRTY_HIGH, BUFFER_WRITER_INTERVAL);
+	   if (READ_AHEAD_BLOCKS > 0)
+		   bm.startReadAhead(READ_AHEAD_BLOCKS, READ_AHEAD_TRIGGER);
+	   if (BUFFER_HOTSET_INTERVAL > 0)
+		   bm.startHotSet(fm.file(BUFFER_HOTSET_FILE), BUFFER_HOTSET_INTERVAL);
    }
    
    /**
@@ -95,11 +276,113 @@ public class SimpleDB {
       mdm = new MetadataMgr(isnew, tx);
    }
    
+   /**
+    * Closes the database: stops the background threads of the
+    * buffer pool after saving the hot set, stops the I/O threads,
+    * and truncates the files to their logical size.
+    * Committed modifications are already on disk, so nothing
+    * else needs to be written.
+    * This method is called when the JVM exits.
+    * @author Team F
+    */
+   public static synchronized void shutdown() {
+      if (bm != null) {
+         bm.stopHotSet();
+         bm.stopWriter();
+         bm.stopReadAhead();
+      }
+      if (fm != null) {
+         fm.stopIO();
+         fm.truncateExtents();
+      }
+   }
+   
+   private static synchronized void addShutdownHook() {
+      if (hooked)
+         return;
+      hooked = true;
+      Runtime.getRuntime().addShutdownHook(new Thread("simpledb-shutdown") {
+         public void run() {
+            shutdown();
+         }
+      });
+   }
+   
    public static FileMgr     fileMgr()   { return fm; }
    public static BufferMgr   bufferMgr() { return bm; }
    public static LogMgr      logMgr()    { return logm; }
    public static MetadataMgr mdMgr()     { return mdm; }
    
+   /**
+    * Changes the number of buffers of the running buffer pool,
+    * and the BUFFER_SIZE setting, so that a later initialization
+    * keeps the new size.
+    * @param numbuffs the new number of buffers
+    * @author Team F
+    */
+   public static void resizeBufferPool(int numbuffs) {
+      bm.resize(numbuffs);
+      BUFFER_SIZE = numbuffs;
+   }
+   
+   /**
+    * Creates the replacement policy for a buffer pool.
+    * To add a replacement policy, modify this method.
+    * @param name the name of the policy
+    * @param numbuffs the number of buffers in the pool
+    * @return a new replacement policy
+    * @author Team F
+    */
+   public static ReplacementPolicy replacementPolicy(String name, int numbuffs) {
+      if (name.equalsIgnoreCase("LRU-K"))
+         return new LRUKPolicy(LRU_K, LRU_CORRELATED_PERIOD);
+      else if (name.equalsIgnoreCase("CLOCK"))
+         return new ClockPolicy();
+      else if (name.equalsIgnoreCase("2Q"))
+         return new TwoQPolicy(numbuffs);
+      else if (name.equalsIgnoreCase("ARC"))
+         return new ARCPolicy(numbuffs);
+      else
+         throw new RuntimeException("unknown replacement policy " + name);
+   }
+   
+   /**
+    * Assigns the files of the specified index to the keep pool,
+    * if there is one. A hash index has a file per bucket, named
+    * after the index and the bucket number, and a B-tree index
+    * has a leaf file and a directory file.
+    * @param idxname the name of the index
+    * @author Team F
+    */
+   public static void assignIndexFiles(String idxname) {
+      if (bm.hasPool(KEEP_POOL))
+         bm.assign(Pattern.quote(idxname) + "(\\d+|leaf|dir)\\.tbl", KEEP_POOL);
+   }
+   
+   /**
+    * Creates the buffer ring of a scan of the specified number of
+    * blocks, or returns null if the scan is small enough to use
+    * the replacement policy of the pool.
+    * @param numblocks the estimated number of blocks of the scan
+    * @return a new buffer ring, or null
+    * @author Team F
+    */
+   public static BufferRing scanRing(int numblocks) {
+      if (numblocks <= SCAN_RING_THRESHOLD * bm.size())
+         return null;
+      return scanRing();
+   }
+   
+   /**
+    * Creates the buffer ring of a scan that always uses one,
+    * such as the scan of a temporary table.
+    * @return a new buffer ring
+    * @author Team F
+    */
+   public static BufferRing scanRing() {
+      return new BufferRing(SCAN_RING_SIZE);
+   }
+   
    /**
     * Creates a planner for SQL commands.
     * To change how the planner works, modify this method.
@@ -743,8 +743,7 @@ public class TestBuffer {
 			int i = 1;
 			for (HashMap.Entry<Block, Buffer> e : testBBMgr.getBufferPoolMap().entrySet()) {
 				System.out.println(" " + i + " --> " + e.getKey().toString() + 
-						"\t[l=" + e.getValue().getlastPin() + 
-						" ,s=" + e.getValue().getSecondLastPin() + "]");
+						"\t[Buffer " + e.getValue().getBufferId() + "]");
 				i++;
 			}
 		}
@@ -1,17 +1,22 @@
 package simpledb.tx;
 
 import simpledb.server.SimpleDB;
-import simpledb.file.Block;
+import simpledb.file.*;
 import simpledb.buffer.*;
 import java.util.*;
 
 /**
  * Manages the transaction's currently-pinned buffers. 
+ * Each pinned block has an entry holding its buffer and the
+ * number of times the transaction pinned it, so that pinning
+ * and unpinning take constant time.
+ * The buffer manager limits the number of buffers of each pool
+ * that the transaction may pin (Team F).
  * @author Edward Sciore
  */
 class BufferList {
-   private Map<Block,Buffer> buffers = new HashMap<Block,Buffer>();
-   private List<Block> pins = new ArrayList<Block>();
+   private Map<Block,Pin> pins = new HashMap<Block,Pin>();
+   private Map<String,Integer> poolPins = new HashMap<String,Integer>();
    private BufferMgr bufferMgr = SimpleDB.bufferMgr();
    
    /**
@@ -22,7 +27,8 @@ class BufferList {
     * @return the buffer pinned to that block
     */
    Buffer getBuffer(Block blk) {
-      return buffers.get(blk);
+      Pin p = pins.get(blk);
+      return (p == null) ? null : p.buff;
    }
    
    /**
@@ -30,9 +36,60 @@ class BufferList {
     * @param blk a reference to the disk block
     */
    void pin(Block blk) {
-      Buffer buff = bufferMgr.pin(blk);
-      buffers.put(blk, buff);
-      pins.add(blk);
+      pin(blk, null);
+   }
+   
+   /**
+    * Pins the block and keeps track of the buffer internally,
+    * reading the block into a buffer of the specified ring
+    * if it is not in the pool.
+    * A block that the transaction has not pinned yet needs
+    * another buffer, which the pin quota of the transaction
+    * must allow.
+    * @param blk a reference to the disk block
+    * @param ring the buffer ring of the scan, or null
+    */
+   void pin(Block blk, BufferRing ring) {
+      Pin p = pins.get(blk);
+      if (p != null) {
+         bufferMgr.pin(blk, ring);
+         p.pinned();
+         return;
+      }
+      String pool = bufferMgr.poolName(blk.fileName());
+      bufferMgr.checkPinQuota(blk.fileName(), poolPins(pool));
+      Buffer buff = bufferMgr.pin(blk, ring);
+      add(blk, buff, pool);
+   }
+   
+   /**
+    * Pins the blocks startbnum to endbnum of the specified file,
+    * reading the missing ones with vectored reads.
+    * The blocks that the transaction has not pinned yet
+    * must fit in its pin quota.
+    * @param filename the name of the file
+    * @param startbnum the first block to pin
+    * @param endbnum the last block to pin
+    * @author Team F
+    */
+   void pinRange(String filename, int startbnum, int endbnum) {
+      int fileid = FileIds.id(filename);
+      int newpins = 0;
+      for (int i=startbnum; i<=endbnum; i++)
+         if (!pins.containsKey(new Block(fileid, i)))
+            newpins++;
+      String pool = bufferMgr.poolName(filename);
+      if (newpins > 0)
+         bufferMgr.checkPinQuota(filename, poolPins(pool) + newpins - 1);
+      Buffer[] buffs = bufferMgr.pinRange(filename, startbnum, endbnum);
+      for (int i=startbnum; i<=endbnum; i++) {
+         Block blk = new Block(fileid, i);
+         Pin p = pins.get(blk);
+         if (p == null)
+            add(blk, buffs[i - startbnum], pool);
+         else
+            p.pinned();
+      }
    }
    
    /**
@@ -43,10 +100,24 @@ class BufferList {
     * @return a reference to the newly-created block
     */
    Block pinNew(String filename, PageFormatter fmtr) {
-      Buffer buff = bufferMgr.pinNew(filename, fmtr);
+      return pinNew(filename, fmtr, null);
+   }
+   
+   /**
+    * Appends a new block to the specified file
+    * and pins it, using a buffer of the specified ring
+    * when possible.
+    * @param filename the name of the file
+    * @param fmtr the formatter used to initialize the new page
+    * @param ring the buffer ring of the scan, or null
+    * @return a reference to the newly-created block
+    */
+   Block pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
+      String pool = bufferMgr.poolName(filename);
+      bufferMgr.checkPinQuota(filename, poolPins(pool));
+      Buffer buff = bufferMgr.pinNew(filename, fmtr, ring);
       Block blk = buff.block();
-      buffers.put(blk, buff);
-      pins.add(blk);
+      add(blk, buff, pool);
       return blk;
    }
    
@@ -55,22 +126,86 @@ class BufferList {
     * @param blk a reference to the disk block
     */
    void unpin(Block blk) {
-      Buffer buff = buffers.get(blk);
-      bufferMgr.unpin(buff);
-      pins.remove(blk);
-      if (!pins.contains(blk))
-         buffers.remove(blk);
+      Pin p = pins.get(blk);
+      bufferMgr.unpin(p.buff);
+      if (p.unpinned() == 0) {
+         pins.remove(blk);
+         poolPins.put(p.pool, poolPins.get(p.pool) - 1);
+      }
    }
    
    /**
     * Unpins any buffers still pinned by this transaction.
+    * In debug mode, if blocks were still pinned, a
+    * {@link PinLeakException} naming them is then thrown,
+    * with the places where they were pinned.
+    * @param txnum the id of the transaction
     */
-   void unpinAll() {
-      for (Block blk : pins) {
-         Buffer buff = buffers.get(blk);
-         bufferMgr.unpin(buff);
+   void unpinAll(int txnum) {
+      List<String> leaked = new ArrayList<String>();
+      List<Throwable> traces = new ArrayList<Throwable>();
+      for (Map.Entry<Block,Pin> e : pins.entrySet()) {
+         Pin p = e.getValue();
+         if (SimpleDB.PIN_LEAK_DEBUG) {
+            leaked.add(e.getKey() + " " + p.count + " time(s)");
+            if (p.traces != null)
+               traces.addAll(p.traces);
+         }
+         for (int i=0; i<p.count; i++)
+            bufferMgr.unpin(p.buff);
       }
-      buffers.clear();
       pins.clear();
+      poolPins.clear();
+      if (!leaked.isEmpty()) {
+         PinLeakException e = new PinLeakException("transaction " + txnum
+                                                    + " still pins " + leaked);
+         for (Throwable t : traces)
+            e.addSuppressed(t);
+         throw e;
+      }
+   }
+   
+   private int poolPins(String pool) {
+      Integer n = poolPins.get(pool);
+      return (n == null) ? 0 : n;
+   }
+   
+   private void add(Block blk, Buffer buff, String pool) {
+      pins.put(blk, new Pin(buff, pool));
+      poolPins.put(pool, poolPins(pool) + 1);
+   }
+   
+   /**
+    * A block pinned by the transaction: its buffer, the
+    * pool it was pinned in, the number of times it is
+    * pinned, and in debug mode the stack traces of the
+    * pinning calls that are not yet matched by an unpin.
+    */
+   private static class Pin {
+      Buffer buff;
+      String pool;
+      int count = 0;
+      Deque<Throwable> traces;
+      
+      Pin(Buffer buff, String pool) {
+         this.buff = buff;
+         this.pool = pool;
+         if (SimpleDB.PIN_LEAK_DEBUG)
+            traces = new ArrayDeque<Throwable>();
+         pinned();
+      }
+      
+      void pinned() {
+         count++;
+         if (traces != null)
+            traces.push(new Throwable("pinned here"));
+      }
+      
+      int unpinned() {
+         if (traces != null && !traces.isEmpty())
+            traces.pop();
+         return --count;
+      }
+
    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package simpledb.tx;
+
+/**
+ * A runtime exception indicating that a transaction
+ * committed or rolled back while it still pinned blocks.
+ * It is thrown in debug mode only, after the blocks are
+ * unpinned; the stack traces of the calls that pinned them
+ * are attached as suppressed exceptions.
+ * @author Team F
+ */
+@SuppressWarnings("serial")
+public class PinLeakException extends RuntimeException {
+   public PinLeakException(String msg) {
+      super(msg);
+   }
+}
@@ -47,7 +47,7 @@ public class Transaction {
    public void commit() {
       recoveryMgr.commit();
       concurMgr.release();
-      myBuffers.unpinAll();
+      myBuffers.unpinAll(txnum);
       System.out.println("transaction " + txnum + " committed");
    }
    
@@ -61,7 +61,7 @@ public class Transaction {
    public void rollback() {
       recoveryMgr.rollback();
       concurMgr.release();
-      myBuffers.unpinAll();
+      myBuffers.unpinAll(txnum);
       System.out.println("transaction " + txnum + " rolled back");
    }
    
@@ -87,6 +87,32 @@ public class Transaction {
       myBuffers.pin(blk);
    }
    
+   /**
+    * Pins the specified block, reading it into a
+    * buffer of the specified ring if it is not in the pool.
+    * Large scans use a ring so that they do not replace
+    * the buffers of other transactions.
+    * @param blk a reference to the disk block
+    * @param ring the buffer ring of the scan, or null
+    */
+   public void pin(Block blk, BufferRing ring) {
+      myBuffers.pin(blk, ring);
+   }
+   
+   /**
+    * Pins the blocks startbnum to endbnum of the specified file,
+    * reading the blocks that are not in the buffer pool
+    * with as few reads as possible.
+    * Each block is unpinned separately.
+    * @param filename the name of the file
+    * @param startbnum the first block to pin
+    * @param endbnum the last block to pin
+    * @author Team F
+    */
+   public void pinRange(String filename, int startbnum, int endbnum) {
+      myBuffers.pinRange(filename, startbnum, endbnum);
+   }
+   
    /**
     * Unpins the specified block.
     * The transaction looks up the buffer pinned to this block,
@@ -191,9 +217,22 @@ public class Transaction {
     * @return a reference to the newly-created disk block
     */
    public Block append(String filename, PageFormatter fmtr) {
+      return append(filename, fmtr, null);
+   }
+   
+   /**
+    * Appends a new block to the end of the specified file
+    * like {@link #append(String, PageFormatter)}, using a
+    * buffer of the specified ring when possible.
+    * @param filename the name of the file
+    * @param fmtr the formatter used to initialize the new page
+    * @param ring the buffer ring of the scan, or null
+    * @return a reference to the newly-created disk block
+    */
+   public Block append(String filename, PageFormatter fmtr, BufferRing ring) {
       Block dummyblk = new Block(filename, END_OF_FILE);
       concurMgr.xLock(dummyblk);
-      Block blk = myBuffers.pinNew(filename, fmtr);
+      Block blk = myBuffers.pinNew(filename, fmtr, ring);
       unpin(blk);
       return blk;
    }
@@ -3,6 +3,7 @@ package simpledb.tx.recovery;
 import static simpledb.tx.recovery.LogRecord.*;
 import java.util.Iterator;
 import simpledb.log.BasicLogRecord;
+import simpledb.log.LogIterator;
 import simpledb.server.SimpleDB;
 
 /**
@@ -14,7 +15,7 @@ import simpledb.server.SimpleDB;
  * @author Edward Sciore
  */
 class LogRecordIterator implements Iterator<LogRecord> {
-   private Iterator<BasicLogRecord> iter = SimpleDB.logMgr().iterator();
+   private LogIterator iter = (LogIterator) SimpleDB.logMgr().iterator();
    
    public boolean hasNext() {
       return iter.hasNext();
@@ -53,4 +54,12 @@ class LogRecordIterator implements Iterator<LogRecord> {
    public void remove() {
       throw new UnsupportedOperationException();
    }
+   
+   /**
+    * Releases the page of the underlying log iterator.
+    * @author Team F
+    */
+   public void close() {
+      iter.close();
+   }
 }
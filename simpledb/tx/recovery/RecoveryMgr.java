@@ -24,9 +24,12 @@ public class RecoveryMgr {
 
    /**
     * Writes a commit record to the log, and flushes it to disk.
+    * The modified pages are forced to the device before the
+    * commit record is written, since recovery only undoes.
+    * Only the files that the transaction modified are forced.
     */
    public void commit() {
-      SimpleDB.bufferMgr().flushAll(txnum);
+      force(SimpleDB.bufferMgr().flushAll(txnum));
       int lsn = new CommitRecord(txnum).writeToLog();
       SimpleDB.logMgr().flush(lsn);
    }
@@ -36,7 +39,7 @@ public class RecoveryMgr {
     */
    public void rollback() {
       doRollback();
-      SimpleDB.bufferMgr().flushAll(txnum);
+      force(SimpleDB.bufferMgr().flushAll(txnum));
       int lsn = new RollbackRecord(txnum).writeToLog();
       SimpleDB.logMgr().flush(lsn);
    }
@@ -47,7 +50,7 @@ public class RecoveryMgr {
     */
    public void recover() {
       doRecover();
-      SimpleDB.bufferMgr().flushAll(txnum);
+      force(SimpleDB.bufferMgr().flushAll(txnum));
       int lsn = new CheckpointRecord().writeToLog();
       SimpleDB.logMgr().flush(lsn);
 
@@ -95,15 +98,20 @@ public class RecoveryMgr {
     * until it finds the transaction's START record.
     */
    private void doRollback() {
-      Iterator<LogRecord> iter = new LogRecordIterator();
-      while (iter.hasNext()) {
-         LogRecord rec = iter.next();
-         if (rec.txNumber() == txnum) {
-            if (rec.op() == START)
-               return;
-            rec.undo(txnum);
+      LogRecordIterator iter = new LogRecordIterator();
+      try {
+         while (iter.hasNext()) {
+            LogRecord rec = iter.next();
+            if (rec.txNumber() == txnum) {
+               if (rec.op() == START)
+                  return;
+               rec.undo(txnum);
+            }
          }
       }
+      finally {
+         iter.close();
+      }
    }
 
    /**
@@ -116,18 +124,33 @@ public class RecoveryMgr {
     */
    private void doRecover() {
       Collection<Integer> finishedTxs = new ArrayList<Integer>();
-      Iterator<LogRecord> iter = new LogRecordIterator();
-      while (iter.hasNext()) {
-         LogRecord rec = iter.next();
-         if (rec.op() == CHECKPOINT)
-            return;
-         if (rec.op() == COMMIT || rec.op() == ROLLBACK)
-            finishedTxs.add(rec.txNumber());
-         else if (!finishedTxs.contains(rec.txNumber()))
-            rec.undo(txnum);
+      LogRecordIterator iter = new LogRecordIterator();
+      try {
+         while (iter.hasNext()) {
+            LogRecord rec = iter.next();
+            if (rec.op() == CHECKPOINT)
+               return;
+            if (rec.op() == COMMIT || rec.op() == ROLLBACK)
+               finishedTxs.add(rec.txNumber());
+            else if (!finishedTxs.contains(rec.txNumber()))
+               rec.undo(txnum);
+         }
+      }
+      finally {
+         iter.close();
       }
    }
 
+   /**
+    * Forces the specified files to the device, one at a time,
+    * so that committers of other files do not wait for them.
+    * @author Team F
+    */
+   private void force(Collection<String> filenames) {
+      for (String filename : filenames)
+         SimpleDB.fileMgr().force(filename);
+   }
+
    /**
     * Determines whether a block comes from a temporary file or not.
     */